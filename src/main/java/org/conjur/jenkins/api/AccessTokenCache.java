@@ -0,0 +1,213 @@
+package org.conjur.jenkins.api;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jenkins.util.SystemProperties;
+
+/**
+ * Cache of Conjur access tokens keyed by the identity that authenticated.
+ * Tokens are renewed ahead of their expiry: while one caller renews a token
+ * the others keep using the current one, and concurrent callers without a
+ * valid token share a single authentication request.
+ */
+public final class AccessTokenCache {
+
+	private static final Logger LOGGER = Logger.getLogger(AccessTokenCache.class.getName());
+
+	private static final String PROPERTY_PREFIX = AccessTokenCache.class.getName() + ".";
+
+	/** Lifetime of a Conjur access token, 8 minutes unless changed on the server */
+	public static final long ACCESS_TOKEN_TTL_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "ttlSeconds", 480L);
+
+	/** How long before the expiry a token gets renewed */
+	static final long REFRESH_AHEAD_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "refreshAheadSeconds", 60L);
+
+	/** Maximum number of identities whose tokens are kept */
+	static final long MAX_TOKENS = SystemProperties.getLong(PROPERTY_PREFIX + "maxTokens", 1000L);
+
+	/** Source of the nanosecond times the expiry and renewal are computed from */
+	static volatile LongSupplier clock = System::nanoTime;
+
+	private static final Ticker ticker = new Ticker() {
+		@Override
+		public long read() {
+			return clock.getAsLong();
+		}
+	};
+
+	/** Tokens by identity, dropped once no token can outlive them */
+	private static final Cache<String, CachedToken> tokens = newCache();
+
+	/** Identity of each cached token, tokens are looked up without a scan */
+	private static final Cache<String, String> identities = newCache();
+
+	private static final SingleFlight<String, CachedToken> authentications = new SingleFlight<String, CachedToken>();
+
+	private static final class CachedToken {
+		private final String token;
+		private final long refreshAtNanos;
+		private final long expiresAtNanos;
+
+		private CachedToken(String token, long loadedAtNanos, long ttlSeconds) {
+			long ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+			long refreshAheadNanos = Math.min(TimeUnit.SECONDS.toNanos(REFRESH_AHEAD_SECONDS), ttlNanos / 4);
+			this.token = token;
+			this.expiresAtNanos = loadedAtNanos + ttlNanos;
+			this.refreshAtNanos = this.expiresAtNanos - refreshAheadNanos;
+		}
+	}
+
+	private AccessTokenCache() {
+	}
+
+	private static <V> Cache<String, V> newCache() {
+		return CacheBuilder.newBuilder().maximumSize(MAX_TOKENS)
+				.expireAfterWrite(ACCESS_TOKEN_TTL_SECONDS, TimeUnit.SECONDS).ticker(ticker).build();
+	}
+
+	private static void put(String key, CachedToken token) {
+		identities.put(token.token, key);
+		tokens.put(key, token);
+	}
+
+	/**
+	 * Returns the cached token for the key, authenticating when there is none or
+	 * it is due for renewal.
+	 *
+	 * @param key        identity the token is cached for
+	 * @param ttlSeconds lifetime of a token returned by the loader
+	 * @param loader     authenticates to Conjur and returns a new token
+	 * @return the access token
+	 * @throws IOException if authentication fails and no valid token is cached
+	 */
+	public static String get(String key, long ttlSeconds, SingleFlight.Loader<String> loader) throws IOException {
+		CachedToken cached = tokens.getIfPresent(key);
+		long now = clock.getAsLong();
+		if (cached != null && now - cached.refreshAtNanos < 0) {
+			return cached.token;
+		}
+		if (cached != null && now - cached.expiresAtNanos < 0) {
+			if (authentications.isInFlight(key)) {
+				return cached.token;
+			}
+			try {
+				return authenticate(key, ttlSeconds, loader).token;
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Renewing Conjur access token failed, using current token: " + e.getMessage());
+				return cached.token;
+			}
+		}
+		return authenticate(key, ttlSeconds, loader).token;
+	}
+
+	/**
+	 * Returns the cached token for the key, authenticating when there is none or
+	 * it is due for renewal. The caller is not blocked while authenticating.
+	 * Cancelling the future cancels the authentication if no other caller waits
+	 * for it.
+	 * 
+	 * @param key        identity the token is cached for
+	 * @param ttlSeconds lifetime of a token returned by the loader
+	 * @param loader     starts the authentication to Conjur
+	 * @return future completed with the access token
+	 */
+	public static CompletableFuture<String> getAsync(String key, long ttlSeconds,
+			Supplier<CompletableFuture<String>> loader) {
+		CachedToken cached = tokens.getIfPresent(key);
+		long now = clock.getAsLong();
+		if (cached != null && now - cached.refreshAtNanos < 0) {
+			return CompletableFuture.completedFuture(cached.token);
+		}
+		if (cached != null && now - cached.expiresAtNanos < 0) {
+			if (authentications.isInFlight(key)) {
+				return CompletableFuture.completedFuture(cached.token);
+			}
+			CompletableFuture<CachedToken> renewal = authenticateAsync(key, ttlSeconds, loader);
+			return SingleFlight.cancelling(renewal.handle((renewed, error) -> {
+				if (error != null) {
+					LOGGER.log(Level.WARNING, "Renewing Conjur access token failed, using current token: " + error.getMessage());
+					return cached.token;
+				}
+				return renewed.token;
+			}), renewal);
+		}
+		CompletableFuture<CachedToken> authentication = authenticateAsync(key, ttlSeconds, loader);
+		return SingleFlight.cancelling(authentication.thenApply(token -> token.token), authentication);
+	}
+
+	private static CachedToken authenticate(String key, long ttlSeconds, SingleFlight.Loader<String> loader)
+			throws IOException {
+		return authentications.execute(key, () -> {
+			LOGGER.log(Level.FINE, "Authenticating to Conjur for {0}", key);
+			CachedToken token = new CachedToken(loader.load(), clock.getAsLong(), ttlSeconds);
+			put(key, token);
+			return token;
+		});
+	}
+
+	private static CompletableFuture<CachedToken> authenticateAsync(String key, long ttlSeconds,
+			Supplier<CompletableFuture<String>> loader) {
+		return authentications.executeAsync(key, () -> {
+			LOGGER.log(Level.FINE, "Authenticating to Conjur for {0}", key);
+			CompletableFuture<String> authentication = loader.get();
+			return SingleFlight.cancelling(authentication.thenApply(value -> {
+				CachedToken token = new CachedToken(value, clock.getAsLong(), ttlSeconds);
+				put(key, token);
+				return token;
+			}), authentication);
+		});
+	}
+
+	/**
+	 * @param token an access token
+	 * @return key of the identity the token is cached for, or null if the token
+	 *         is not cached. For API key authentication the key holds the login
+	 *         credential ID and a hash of the API key.
+	 */
+	public static String identityOf(String token) {
+		String key = token != null ? identities.getIfPresent(token) : null;
+		if (key == null) {
+			return null;
+		}
+		// the token may have been renewed or dropped meanwhile
+		CachedToken cached = tokens.getIfPresent(key);
+		return cached != null && token.equals(cached.token) ? key : null;
+	}
+
+	/**
+	 * Drops the token after Conjur rejected it
+	 *
+	 * @param token the rejected token
+	 */
+	public static void invalidateToken(String token) {
+		if (token == null) {
+			return;
+		}
+		String key = identities.getIfPresent(token);
+		identities.invalidate(token);
+		if (key != null) {
+			CachedToken cached = tokens.getIfPresent(key);
+			if (cached != null && token.equals(cached.token) && tokens.asMap().remove(key, cached)) {
+				LOGGER.log(Level.FINE, "Conjur rejected a cached access token, it will be renewed");
+			}
+		}
+	}
+
+	/**
+	 * Drops all cached tokens
+	 */
+	public static void invalidateAll() {
+		tokens.invalidateAll();
+		identities.invalidateAll();
+	}
+}
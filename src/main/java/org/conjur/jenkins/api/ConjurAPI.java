@@ -1,36 +1,64 @@
 package org.conjur.jenkins.api;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.apache.commons.lang.StringUtils;
 import org.conjur.jenkins.configuration.ConjurConfiguration;
 import org.conjur.jenkins.configuration.ConjurJITJobProperty;
 import org.conjur.jenkins.configuration.FolderConjurConfiguration;
 import org.conjur.jenkins.configuration.GlobalConjurConfiguration;
+import org.conjur.jenkins.credentials.ConjurCredentialStore;
+import org.conjur.jenkins.exceptions.ConjurUnauthorizedException;
 import org.conjur.jenkins.jwtauth.impl.JwtToken;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import com.cloudbees.hudson.plugins.folder.AbstractFolder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
-import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
-import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 
-import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.XmlFile;
 import hudson.model.AbstractItem;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.ModelObject;
 import hudson.model.Run;
-import hudson.security.ACL;
+import hudson.model.Saveable;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.SaveableListener;
 import jenkins.model.GlobalConfiguration;
-import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -63,10 +91,114 @@ public class ConjurAPI {
 		public String account;
 		public String login;
 		public String apiKey;
+		/** ID of the Jenkins credential the login and API key were read from */
+		public String credentialID;
+		/** unsigned JWT for Just-In-Time access, signed only when authenticating */
+		public JwtToken jwtToken;
+	}
+
+	/**
+	 * Secrets retrieved by {@link ConjurAPI#getSecrets}, keyed by variable path.
+	 * Variables that could not be retrieved are reported in errors.
+	 */
+	public static class ConjurSecretsResult {
+		public final Map<String, String> secrets = new LinkedHashMap<String, String>();
+		public final Map<String, IOException> errors = new LinkedHashMap<String, IOException>();
+	}
+
+	/**
+	 * A variable of a resource listing, with the annotations describing the
+	 * Jenkins credential it provides
+	 */
+	public static class ConjurVariable {
+		public String variablePath;
+		public String userName;
+		public String credentialType;
+	}
+
+	/**
+	 * Reads the response of a call sent with {@link ConjurAPI#execute} or
+	 * {@link ConjurAPI#enqueue}
+	 *
+	 * @param <T> result type
+	 */
+	@FunctionalInterface
+	private interface ResponseHandler<T> {
+		T handle(Response response) throws IOException;
+	}
+
+	/**
+	 * Drops the cached effective configurations of a saved job or folder and of
+	 * the items below it, or all of them when the global Conjur configuration is
+	 * saved
+	 */
+	@Extension
+	public static class ConfigurationChangeListener extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (o instanceof Item) {
+				invalidateConfigurations(((Item) o).getFullName());
+			} else if (o instanceof GlobalConjurConfiguration) {
+				invalidateConfigurations();
+			}
+		}
+	}
+
+	/**
+	 * Drops the cached effective configurations of items that move or are
+	 * deleted and of the items below them, the folders they inherit from change
+	 */
+	@Extension
+	public static class ConfigurationItemListener extends ItemListener {
+
+		@Override
+		public void onDeleted(Item item) {
+			invalidateConfigurations(item.getFullName());
+		}
+
+		@Override
+		public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+			invalidateConfigurations(oldFullName);
+			invalidateConfigurations(newFullName);
+		}
 	}
 
 	private static final Logger LOGGER = Logger.getLogger(ConjurAPI.class.getName());
 
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/** Secret fetches in flight, concurrent fetches of the same secret share one request */
+	private static final SingleFlight<String, String> secretFetches = new SingleFlight<String, String>();
+
+	/** Maximum number of builds and items whose effective configuration is cached */
+	private static final long MAX_EFFECTIVE_CONFIGURATIONS = SystemProperties
+			.getLong(ConjurAPI.class.getName() + ".maxEffectiveConfigurations", 1000L);
+
+	/**
+	 * Effective Conjur configuration of builds and items, keyed by kind and full
+	 * name. Entries of an item and the items below it are dropped when it
+	 * changes, all of them when the global configuration changes.
+	 */
+	private static final Cache<String, Optional<ConjurConfiguration>> effectiveConfigurations = CacheBuilder
+			.newBuilder().maximumSize(MAX_EFFECTIVE_CONFIGURATIONS).build();
+
+	/** Maximum number of variables requested in one batch, bounds the URL length */
+	private static final int SECRETS_BATCH_SIZE = Math.max(1, SystemProperties
+			.getInteger(ConjurAPI.class.getName() + ".secretsBatchSize", 50));
+
+	/** Number of variables requested per page when listing the variables */
+	private static final int VARIABLES_PAGE_SIZE = Math.max(1,
+			SystemProperties.getInteger(ConjurAPI.class.getName() + ".variablesPageSize", 1000));
+
+	/** Claims of a JWT identifying the job, besides the identity format fields */
+	private static final List<String> JWT_IDENTITY_CLAIMS = Arrays.asList("sub", "aud", "jenkins_full_name",
+			"jenkins_parent_full_name");
+
+	/** Number of pages requested concurrently once the first page is full */
+	private static final int VARIABLES_PAGE_PARALLELISM = Math.max(1,
+			SystemProperties.getInteger(ConjurAPI.class.getName() + ".variablesPageParallelism", 4));
+
 	/**
 	 * Set the ConjurAuthnInfo with the environment variables
 	 * 
@@ -101,35 +233,87 @@ public class ConjurAPI {
 	 *         Unauthorized
 	 * @throws IOException in case of error connecting to Conjur Server
 	 */
-	@SuppressFBWarnings
 	public static  String getAuthorizationToken(OkHttpClient client, ConjurConfiguration configuration,
 			ModelObject context) throws IOException {
-		LOGGER.log(Level.FINE, "Start of getAuthorizationToken()");
-		LOGGER.log(Level.INFO,
-				"getAuthorizationToken input params" + "Client:" + client + "Configuration:" + configuration);
-		String resultingToken = null;
+		Authentication authentication = authentication(client, configuration, context);
+		if (authentication == null) {
+			LOGGER.log(Level.FINE, "Failed to authenticate with conjur server");
+			return null;
+		}
+		if (authentication.tokenKey == null) {
+			return authenticate(client, authentication.request.get());
+		}
+		return AccessTokenCache.get(authentication.tokenKey, authentication.ttlSeconds,
+				() -> authenticate(client, authentication.request.get()));
+	}
 
-		List<UsernamePasswordCredentials> availableCredentials = null;
+	/**
+	 * Asynchronous variant of {@link ConjurAPI#getAuthorizationToken}. The
+	 * credentials are looked up on the calling thread, the authentication request
+	 * is sent through the dispatcher of the client.
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration ConjurConfiguration object containing
+	 *                      account,applianceUrl,credentialID,certificateCredentialID,ownerFullName.
+	 * @param context       current context in which Jenkins Job are running
+	 * @return future completed with the access token, or null if no
+	 *         authentication method is configured
+	 */
+	public static CompletableFuture<String> getAuthorizationTokenAsync(OkHttpClient client,
+			ConjurConfiguration configuration, ModelObject context) {
+		Authentication authentication = authentication(client, configuration, context);
+		if (authentication == null) {
+			LOGGER.log(Level.FINE, "Failed to authenticate with conjur server");
+			return CompletableFuture.completedFuture(null);
+		}
+		if (authentication.tokenKey == null) {
+			return authenticateAsync(client, authentication.request.get());
+		}
+		return AccessTokenCache.getAsync(authentication.tokenKey, authentication.ttlSeconds,
+				() -> authenticateAsync(client, authentication.request.get()));
+	}
 
-		availableCredentials = CredentialsProvider.lookupCredentials(UsernamePasswordCredentials.class, Jenkins.get(),
-				ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
+	/**
+	 * The authentication request to send and the key its token is cached under
+	 */
+	private static final class Authentication {
+		/** builds the request, the JWT is only signed when it is sent */
+		private final Supplier<Request> request;
+		/** key of the access token cache, null if the token is not cached */
+		private final String tokenKey;
+		private final long ttlSeconds;
 
-		if (context != null) {
-			if (context instanceof Run) {
-				availableCredentials.addAll(CredentialsProvider.lookupCredentials(UsernamePasswordCredentials.class,
-						((Run) context).getParent(), ACL.SYSTEM, Collections.<DomainRequirement>emptyList()));
-			} else {
-				if ((context instanceof AbstractItem)) {
-					availableCredentials.addAll(CredentialsProvider.lookupCredentials(UsernamePasswordCredentials.class,
-							(AbstractItem) context, ACL.SYSTEM, Collections.<DomainRequirement>emptyList()));
-				}
-			}
+		private Authentication(Supplier<Request> request, String tokenKey, long ttlSeconds) {
+			this.request = request;
+			this.tokenKey = tokenKey;
+			this.ttlSeconds = ttlSeconds;
 		}
+	}
+
+	/**
+	 * Resolves the authentication method configured for the context
+	 * 
+	 * @return the authentication, or null if no authentication method is
+	 *         configured
+	 */
+	private static Authentication authentication(OkHttpClient client, ConjurConfiguration configuration,
+			ModelObject context) {
+		LOGGER.log(Level.FINE, "Start of getAuthorizationToken()");
+		LOGGER.log(Level.INFO,
+				"getAuthorizationToken input params" + "Client:" + client + "Configuration:" + configuration);
+
+		// only the configured login credential is needed, it is looked up by ID
+		UsernamePasswordCredentials loginCredential = configuration != null
+				? ConjurAPIUtils.loginCredential(configuration.getCredentialID(), context)
+				: null;
+		List<UsernamePasswordCredentials> availableCredentials = loginCredential != null
+				? Collections.singletonList(loginCredential)
+				: Collections.<UsernamePasswordCredentials>emptyList();
 
 		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, availableCredentials, context);
 		GlobalConjurConfiguration globalConfig = GlobalConfiguration.all().get(GlobalConjurConfiguration.class);
-		if(globalConfig != null) {
-		ConjurConfiguration globalConjurConfig = globalConfig.getConjurConfiguration();
+		ConjurConfiguration globalConjurConfig = globalConfig != null ? globalConfig.getConjurConfiguration() : null;
+		if(globalConjurConfig != null) {
 			if(conjurAuthn.account ==null || conjurAuthn.account.isEmpty()){
 				conjurAuthn.account = globalConjurConfig.getAccount();
 			}
@@ -147,7 +331,7 @@ public class ConjurAPI {
 				{
 					if(!identityFields.contains("jenkins_parent_full_name") || !identityFields.contains("jenkins_name"))
 					{
-						throw new RuntimeException(
+						throw new IllegalStateException(
 								"Invalid configuration on conjur jenkins plugin. Ensure Identity format fields are configured correctly.");
 					}
 				}
@@ -159,8 +343,13 @@ public class ConjurAPI {
 			LOGGER.log(Level.FINE, "Creating authentication request for API Key authentication with Conjur");
 			request = new Request.Builder()
 					.url(String.format("%s/%s/%s/%s/authenticate", conjurAuthn.applianceUrl, conjurAuthn.authnPath,
-							conjurAuthn.account, URLEncoder.encode(conjurAuthn.login, "utf-8")))
+							conjurAuthn.account, URLEncoder.encode(conjurAuthn.login, StandardCharsets.UTF_8)))
 					.post(RequestBody.create(MediaType.parse("text/plain"), conjurAuthn.apiKey)).build();
+		} else if (conjurAuthn.authnPath != null && conjurAuthn.jwtToken != null) {
+			LOGGER.log(Level.FINE, "Using JWT authentication with Conjur for Just-In-Time access");
+			String sub = conjurAuthn.jwtToken.claim.optString("sub");
+			return new Authentication(() -> jwtAuthenticationRequest(conjurAuthn),
+					sub.isEmpty() ? null : jwtAccessTokenKey(conjurAuthn), jwtAccessTokenTtlSeconds());
 		} else if (conjurAuthn.authnPath != null && conjurAuthn.apiKey != null) {
 			LOGGER.log(Level.FINE, "Creating authentication request for JWT authentication with Conjur");
 			String authnPath = conjurAuthn.authnPath.indexOf("/") == -1 ? "authn-jwt/" + conjurAuthn.authnPath
@@ -173,23 +362,233 @@ public class ConjurAPI {
 
 		}
 
-		if (request != null) {
-			Response response = client.newCall(request).execute();
-			resultingToken = Base64.getEncoder().withoutPadding()
-					.encodeToString(response.body().string().getBytes("UTF-8"));
-			LOGGER.log(Level.FINEST,
-					() -> "Conjur Authenticate response " + response.code() + " - " + response.message());
-			if (response.code() != 200) {
+		if (request == null) {
+			return null;
+		}
+		final Request authnRequest = request;
+		return new Authentication(() -> authnRequest, conjurAuthn.login != null ? accessTokenKey(conjurAuthn) : null,
+				AccessTokenCache.ACCESS_TOKEN_TTL_SECONDS);
+	}
 
-				throw new IOException("Error authenticating to Conjur [" + response.code() + " - " + response.message()
-						+ "\n" + resultingToken);
-			}
-		} else {
-			LOGGER.log(Level.FINE, "Failed to authenticate with conjur server");
+	/**
+	 * Sends the authentication request to Conjur
+	 * 
+	 * @param client  OkHttp client
+	 * @param request the authentication request
+	 * @return the base64 encoded access token
+	 * @throws IOException if the authentication failed
+	 */
+	private static String authenticate(OkHttpClient client, Request request) throws IOException {
+		return execute(client, request, ConjurAPI::readAccessToken);
+	}
+
+	/**
+	 * Asynchronous variant of {@link ConjurAPI#authenticate}
+	 * 
+	 * @param client  OkHttp client
+	 * @param request the authentication request
+	 * @return future completed with the base64 encoded access token
+	 */
+	private static CompletableFuture<String> authenticateAsync(OkHttpClient client, Request request) {
+		return enqueue(client, request, ConjurAPI::readAccessToken);
+	}
+
+	private static String readAccessToken(Response response) throws IOException {
+		String resultingToken = Base64.getEncoder().withoutPadding()
+				.encodeToString(response.body().string().getBytes("UTF-8"));
+		LOGGER.log(Level.FINEST,
+				() -> "Conjur Authenticate response " + response.code() + " - " + response.message());
+		if (response.code() != 200) {
+
+			throw new IOException("Error authenticating to Conjur [" + response.code() + " - "
+					+ response.message() + "\n" + resultingToken);
 		}
 		return resultingToken;
 	}
 
+	/**
+	 * Sends the request on the calling thread, outside the dispatcher of the
+	 * client
+	 * 
+	 * @param <T>     result type
+	 * @param client  OkHttp client
+	 * @param request request to send
+	 * @param handler reads the response
+	 * @return the result of the handler
+	 * @throws IOException if the call or the handler failed
+	 */
+	private static <T> T execute(OkHttpClient client, Request request, ResponseHandler<T> handler)
+			throws IOException {
+		try (Response response = client.newCall(request).execute()) {
+			return handler.handle(response);
+		}
+	}
+
+	/**
+	 * Sends the request through the dispatcher of the client. The handler runs on
+	 * a dispatcher thread and the response is closed once it returns.
+	 * 
+	 * @param <T>     result type
+	 * @param client  OkHttp client
+	 * @param request request to send
+	 * @param handler reads the response
+	 * @return future completed with the result of the handler, cancelling it
+	 *         cancels the call
+	 */
+	private static <T> CompletableFuture<T> enqueue(OkHttpClient client, Request request, ResponseHandler<T> handler) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		Call call = client.newCall(request);
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				future.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				try (Response r = response) {
+					future.complete(handler.handle(r));
+				} catch (IOException | RuntimeException e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		future.whenComplete((result, error) -> {
+			if (future.isCancelled()) {
+				call.cancel();
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Like {@link CompletableFuture#thenCompose}, but cancelling the result also
+	 * cancels the source and the future composed from it
+	 * 
+	 * @param <T>    source result type
+	 * @param <U>    result type
+	 * @param source future to compose
+	 * @param next   starts the next step from the result of the source
+	 * @return future completed with the result of the next step
+	 */
+	private static <T, U> CompletableFuture<U> compose(CompletableFuture<T> source,
+			Function<T, CompletableFuture<U>> next) {
+		CompletableFuture<U> result = new CompletableFuture<U>();
+		source.whenComplete((value, error) -> {
+			if (error != null) {
+				result.completeExceptionally(error);
+				return;
+			}
+			CompletableFuture<U> composed;
+			try {
+				composed = next.apply(value);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			SingleFlight.cancelling(result, composed);
+			composed.whenComplete((composedValue, composedError) -> {
+				if (composedError != null) {
+					result.completeExceptionally(composedError);
+				} else {
+					result.complete(composedValue);
+				}
+			});
+		});
+		return SingleFlight.cancelling(result, source);
+	}
+
+	/**
+	 * The key covers the login credential and a hash of the API key, so a token
+	 * is only handed to callers that hold the same API key, not to any credential
+	 * claiming the same login.
+	 * 
+	 * @param conjurAuthn the resolved authentication info
+	 * @return key of the access token cache for the authenticating identity
+	 */
+	static String accessTokenKey(ConjurAuthnInfo conjurAuthn) {
+		return String.join("|", conjurAuthn.applianceUrl, conjurAuthn.authnPath, conjurAuthn.account,
+				conjurAuthn.login, String.valueOf(conjurAuthn.credentialID), sha256(conjurAuthn.apiKey));
+	}
+
+	private static String sha256(String value) {
+		if (value == null) {
+			return "";
+		}
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return Base64.getEncoder().encodeToString(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Signs the JWT and builds the authn-jwt authentication request
+	 * 
+	 * @param conjurAuthn the resolved authentication info holding the JWT
+	 * @return the authentication request
+	 */
+	private static Request jwtAuthenticationRequest(ConjurAuthnInfo conjurAuthn) {
+		String authnPath = conjurAuthn.authnPath.indexOf("/") == -1 ? "authn-jwt/" + conjurAuthn.authnPath
+				: conjurAuthn.authnPath;
+		LOGGER.log(Level.FINE, "Authenticating with Conjur (JWT) authnPath={0}", authnPath);
+		LOGGER.log(Level.FINE, "Claims:\n{0}", conjurAuthn.jwtToken.claim.toString(4));
+		return new Request.Builder()
+				.url(String.format("%s/%s/%s/authenticate", conjurAuthn.applianceUrl, authnPath, conjurAuthn.account))
+				.post(RequestBody.create(MediaType.parse("text/plain"), "jwt=" + conjurAuthn.jwtToken.sign())).build();
+	}
+
+	/**
+	 * The Conjur token obtained with a JWT is shared by every build of the job:
+	 * the key holds the claims identifying the job, including the identity format
+	 * fields Conjur enforces, but not the build specific ones.
+	 * 
+	 * @param conjurAuthn the resolved authentication info
+	 * @return key of the access token cache for the job identity
+	 */
+	private static String jwtAccessTokenKey(ConjurAuthnInfo conjurAuthn) {
+		JSONObject claim = conjurAuthn.jwtToken.claim;
+		Set<String> names = new TreeSet<String>(JWT_IDENTITY_CLAIMS);
+		GlobalConjurConfiguration globalConfig = GlobalConfiguration.all().get(GlobalConjurConfiguration.class);
+		if (globalConfig != null) {
+			addClaimNames(names, globalConfig.getIdentityFormatFieldsFromToken(), ",");
+			addClaimNames(names, globalConfig.getSelectIdentityFormatToken(), "[-,+,|,:,.]");
+		}
+		StringBuilder claims = new StringBuilder();
+		for (String name : names) {
+			if (claim.has(name)) {
+				claims.append(JSONObject.quote(name)).append(':').append(JSONObject.valueToString(claim.get(name)))
+						.append(',');
+			}
+		}
+		return String.join("|", conjurAuthn.applianceUrl, conjurAuthn.authnPath, conjurAuthn.account,
+				sha256(claims.toString()));
+	}
+
+	private static void addClaimNames(Set<String> names, String fields, String separator) {
+		if (StringUtils.isNotBlank(fields)) {
+			for (String field : fields.split(separator)) {
+				if (StringUtils.isNotBlank(field)) {
+					names.add(field.trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return lifetime of a token obtained with a JWT, bounded by both the JWT
+	 *         expiry and the Conjur token TTL
+	 */
+	private static long jwtAccessTokenTtlSeconds() {
+		GlobalConjurConfiguration globalConfig = GlobalConfiguration.all().get(GlobalConjurConfiguration.class);
+		long ttlSeconds = AccessTokenCache.ACCESS_TOKEN_TTL_SECONDS;
+		if (globalConfig != null && globalConfig.getTokenDurarionInSeconds() > 0) {
+			ttlSeconds = Math.min(ttlSeconds, globalConfig.getTokenDurarionInSeconds());
+		}
+		return ttlSeconds;
+	}
+
 	/**
 	 * Retrieve the ConjurAuthnInfo configured for Jenkins build
 	 * 
@@ -234,13 +633,14 @@ public class ConjurAPI {
 	}
 	private static void setConjurAuthnForJITCredentialAccess(ModelObject context, ConjurAuthnInfo conjurAuthn) {
 		LOGGER.log(Level.FINE, "Start of setConjurAuthnForJITCredentialAccess()");
-		String token = JwtToken.getToken(context);
+		// the JWT is signed only if no Conjur token is cached for its identity
+		JwtToken token = JwtToken.getUnsignedToken("SecretRetrieval", context);
 		GlobalConjurConfiguration globalconfig = GlobalConfiguration.all().get(GlobalConjurConfiguration.class);
 
 		if (token != null && globalconfig != null) {
 			conjurAuthn.login = null;
 			conjurAuthn.authnPath = globalconfig.getAuthWebServiceId();
-			conjurAuthn.apiKey = "jwt=" + token;
+			conjurAuthn.jwtToken = token;
 		}
 		LOGGER.log(Level.FINE, "End of setConjurAuthnForJITCredentialAccess()");
 	}
@@ -256,31 +656,534 @@ public class ConjurAPI {
 	 * @return the secrets for the specified variablePath
 	 * @throws IOException
 	 */
-	@SuppressFBWarnings
 	public static String getSecret(OkHttpClient client, ConjurConfiguration configuration, String authToken,
 			String variablePath) throws IOException {
 		LOGGER.log(Level.FINE, "Start of getSecret()");
-		
+
 		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		Request request = secretRequest(conjurAuthn, authToken, variablePath);
+		return secretFetches.execute(secretKey(conjurAuthn, authToken, variablePath),
+				() -> execute(client, request, secretHandler(authToken, variablePath)));
+	}
 
+	/**
+	 * Asynchronous variant of {@link ConjurAPI#getSecret}. Callers fetching the
+	 * same variable with the same token while a fetch is in flight share its
+	 * result, which is not kept once the fetch completes.
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration {@link ConjurConfiguration} containing the Conjur
+	 *                      authentication parameters
+	 * @param authToken     token to authenticate the request.
+	 * @param variablePath  for which to retrieve the secrets
+	 * @return future completed with the secret, fails with
+	 *         {@link ConjurUnauthorizedException} if Conjur rejected the token
+	 */
+	public static CompletableFuture<String> getSecretAsync(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken, String variablePath) {
+		LOGGER.log(Level.FINE, "Start of getSecret()");
+
+		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		Request request = secretRequest(conjurAuthn, authToken, variablePath);
+		return secretFetches.executeAsync(secretKey(conjurAuthn, authToken, variablePath),
+				() -> enqueue(client, request, secretHandler(authToken, variablePath)));
+	}
+
+	private static String secretKey(ConjurAuthnInfo conjurAuthn, String authToken, String variablePath) {
+		return String.join("|", conjurAuthn.applianceUrl, conjurAuthn.account, variablePath, authToken);
+	}
+
+	private static Request secretRequest(ConjurAuthnInfo conjurAuthn, String authToken, String variablePath) {
 		LOGGER.log(Level.FINEST, "Fetching secret from Conjur Server");
-		Request request = new Request.Builder().url(
-				String.format("%s/secrets/%s/variable/%s", conjurAuthn.applianceUrl, conjurAuthn.account, variablePath))
+		return new Request.Builder().url(String.format("%s/secrets/%s/variable/%s", conjurAuthn.applianceUrl,
+				conjurAuthn.account, encodePath(variablePath)))
 				.get().addHeader("Authorization", "Token token=\"" + authToken + "\"").build();
+	}
 
-		Response response = client.newCall(request).execute();
-		String result = response.body().string();
-		LOGGER.log(Level.FINEST, () -> "Fetch secret [" + variablePath + "] from Conjur response " + response.code()
-				+ " - " + response.message());
-		if (response.code() != 200) {
-			throw new IOException("Error fetching secret from Conjur [" + response.code() + " - " + response.message()
-					+ "\n" + result);
+	private static ResponseHandler<String> secretHandler(String authToken, String variablePath) {
+		return response -> {
+			String result = response.body().string();
+			LOGGER.log(Level.FINEST, () -> "Fetch secret [" + variablePath + "] from Conjur response "
+					+ response.code() + " - " + response.message());
+			if (response.code() == 401) {
+				AccessTokenCache.invalidateToken(authToken);
+				throw new ConjurUnauthorizedException("Error fetching secret from Conjur [" + response.code() + " - "
+						+ response.message() + "\n" + result);
+			}
+			if (response.code() != 200) {
+				throw new IOException("Error fetching secret from Conjur [" + response.code() + " - "
+						+ response.message() + "\n" + result);
+			}
+			LOGGER.log(Level.FINE, "End of getSecret()");
+			return result;
+		};
+	}
+
+	/**
+	 * Retrieves several secrets with the batch endpoint of Conjur. If a batch is
+	 * rejected, for instance because one of its variables does not exist or holds
+	 * a binary value, its secrets are retrieved individually so that failures are
+	 * reported per variable.
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration {@link ConjurConfiguration} containing the Conjur
+	 *                      authentication parameters
+	 * @param authToken     token to authenticate the request.
+	 * @param variablePaths paths of the variables to retrieve
+	 * @return the secrets and the failures, keyed by variable path
+	 * @throws ConjurUnauthorizedException if Conjur rejected the token
+	 * @throws IOException                 in case of error connecting to Conjur
+	 *                                     Server
+	 */
+	public static ConjurSecretsResult getSecrets(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken, Collection<String> variablePaths) throws IOException {
+		LOGGER.log(Level.FINE, "Start of getSecrets()");
+		List<String> paths = new ArrayList<String>(new LinkedHashSet<String>(variablePaths));
+		if (paths.size() <= 1) {
+			return fetchSecretsOneByOne(client, configuration, authToken, paths);
+		}
+
+		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		ConjurSecretsResult result = new ConjurSecretsResult();
+		for (List<String> batch : batches(paths, SECRETS_BATCH_SIZE)) {
+			ConjurSecretsResult fetched = execute(client, secretsBatchRequest(conjurAuthn, authToken, batch),
+					secretsBatchHandler(conjurAuthn, authToken, batch));
+			if (fetched == null) {
+				fetched = fetchSecretsOneByOne(client, configuration, authToken, batch);
+			}
+			result.secrets.putAll(fetched.secrets);
+			result.errors.putAll(fetched.errors);
+		}
+		LOGGER.log(Level.FINE, "End of getSecrets()");
+		return result;
+	}
+
+	/**
+	 * Asynchronous variant of {@link ConjurAPI#getSecrets}, the batches are sent
+	 * concurrently
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration {@link ConjurConfiguration} containing the Conjur
+	 *                      authentication parameters
+	 * @param authToken     token to authenticate the request.
+	 * @param variablePaths paths of the variables to retrieve
+	 * @return future completed with the secrets and the failures, fails with
+	 *         {@link ConjurUnauthorizedException} if Conjur rejected the token
+	 */
+	public static CompletableFuture<ConjurSecretsResult> getSecretsAsync(OkHttpClient client,
+			ConjurConfiguration configuration, String authToken, Collection<String> variablePaths) {
+		return getSecretsAsync(client, configuration, authToken, variablePaths, SECRETS_BATCH_SIZE);
+	}
+
+	static CompletableFuture<ConjurSecretsResult> getSecretsAsync(OkHttpClient client,
+			ConjurConfiguration configuration, String authToken, Collection<String> variablePaths, int batchSize) {
+		LOGGER.log(Level.FINE, "Start of getSecrets()");
+		List<String> paths = new ArrayList<String>(new LinkedHashSet<String>(variablePaths));
+		if (paths.size() <= 1) {
+			return fetchSecretsIndividually(client, configuration, authToken, paths);
+		}
+
+		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		List<CompletableFuture<ConjurSecretsResult>> batches = new ArrayList<CompletableFuture<ConjurSecretsResult>>();
+		for (List<String> batch : batches(paths, batchSize)) {
+			batches.add(fetchSecretsBatch(client, configuration, conjurAuthn, authToken, batch));
+		}
+		CompletableFuture<?>[] fetches = batches.toArray(new CompletableFuture<?>[0]);
+		return SingleFlight.cancelling(CompletableFuture.allOf(fetches).thenApply(ignored -> {
+			ConjurSecretsResult result = new ConjurSecretsResult();
+			for (CompletableFuture<ConjurSecretsResult> batch : batches) {
+				result.secrets.putAll(batch.join().secrets);
+				result.errors.putAll(batch.join().errors);
+			}
+			LOGGER.log(Level.FINE, "End of getSecrets()");
+			return result;
+		}), fetches);
+	}
+
+	private static List<List<String>> batches(List<String> paths, int batchSize) {
+		List<List<String>> batches = new ArrayList<List<String>>();
+		for (int from = 0; from < paths.size(); from += batchSize) {
+			batches.add(new ArrayList<String>(paths.subList(from, Math.min(paths.size(), from + batchSize))));
+		}
+		return batches;
+	}
+
+	private static CompletableFuture<ConjurSecretsResult> fetchSecretsBatch(OkHttpClient client,
+			ConjurConfiguration configuration, ConjurAuthnInfo conjurAuthn, String authToken, List<String> batch) {
+		return compose(enqueue(client, secretsBatchRequest(conjurAuthn, authToken, batch),
+				secretsBatchHandler(conjurAuthn, authToken, batch)),
+				result -> result != null ? CompletableFuture.completedFuture(result)
+						: fetchSecretsIndividually(client, configuration, authToken, batch));
+	}
+
+	private static Request secretsBatchRequest(ConjurAuthnInfo conjurAuthn, String authToken, List<String> batch) {
+		List<String> variableIds = new ArrayList<String>();
+		for (String path : batch) {
+			variableIds.add(URLEncoder.encode(conjurAuthn.account + ":variable:" + path, StandardCharsets.UTF_8));
+		}
+
+		LOGGER.log(Level.FINEST, "Fetching {0} secrets from Conjur Server", batch.size());
+		return new Request.Builder()
+				.url(String.format("%s/secrets?variable_ids=%s", conjurAuthn.applianceUrl,
+						String.join(",", variableIds)))
+				.get().addHeader("Authorization", "Token token=\"" + authToken + "\"").build();
+	}
+
+	/**
+	 * @return handler reading the secrets of the batch, it returns null if Conjur
+	 *         rejected the batch and its secrets are to be retrieved individually
+	 */
+	private static ResponseHandler<ConjurSecretsResult> secretsBatchHandler(ConjurAuthnInfo conjurAuthn,
+			String authToken, List<String> batch) {
+		Map<String, String> pathsByVariableId = new LinkedHashMap<String, String>();
+		for (String path : batch) {
+			pathsByVariableId.put(conjurAuthn.account + ":variable:" + path, path);
+		}
+		return response -> {
+			String body = response.body().string();
+			int code = response.code();
+			LOGGER.log(Level.FINEST, () -> "Fetch secrets batch from Conjur response " + code + " - " + response.message());
+			if (code == 401) {
+				AccessTokenCache.invalidateToken(authToken);
+				throw new ConjurUnauthorizedException(
+						"Error fetching secrets from Conjur [" + code + " - " + response.message() + "\n" + body);
+			}
+			if (code != 200) {
+				LOGGER.log(Level.FINE, "Batch retrieval failed with {0}, retrieving the secrets individually", code);
+				return null;
+			}
+
+			JSONObject values;
+			try {
+				values = new JSONObject(body);
+			} catch (JSONException e) {
+				throw new IOException("Invalid response fetching secrets from Conjur: " + e.getMessage(), e);
+			}
+			ConjurSecretsResult result = new ConjurSecretsResult();
+			for (Map.Entry<String, String> entry : pathsByVariableId.entrySet()) {
+				if (values.has(entry.getKey())) {
+					result.secrets.put(entry.getValue(), String.valueOf(values.get(entry.getKey())));
+				} else {
+					result.errors.put(entry.getValue(),
+							new IOException("Secret not returned by Conjur for variable " + entry.getValue()));
+				}
+			}
+			return result;
+		};
+	}
+
+	private static ConjurSecretsResult fetchSecretsOneByOne(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken, List<String> paths) throws IOException {
+		ConjurSecretsResult result = new ConjurSecretsResult();
+		for (String path : paths) {
+			try {
+				result.secrets.put(path, getSecret(client, configuration, authToken, path));
+			} catch (ConjurUnauthorizedException e) {
+				throw e;
+			} catch (IOException e) {
+				result.errors.put(path, e);
+			}
 		}
-		
-		LOGGER.log(Level.FINE, "End of getSecret()");
 		return result;
 	}
 
+	private static CompletableFuture<ConjurSecretsResult> fetchSecretsIndividually(OkHttpClient client,
+			ConjurConfiguration configuration, String authToken, List<String> paths) {
+		List<CompletableFuture<String>> secrets = new ArrayList<CompletableFuture<String>>();
+		for (String path : paths) {
+			secrets.add(getSecretAsync(client, configuration, authToken, path));
+		}
+		CompletableFuture<?>[] fetches = secrets.toArray(new CompletableFuture<?>[0]);
+		return SingleFlight.cancelling(CompletableFuture.allOf(fetches).handle((ignored, failure) -> {
+			ConjurSecretsResult result = new ConjurSecretsResult();
+			for (int i = 0; i < paths.size(); i++) {
+				try {
+					result.secrets.put(paths.get(i), secrets.get(i).join());
+				} catch (CompletionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof ConjurUnauthorizedException) {
+						throw e;
+					}
+					result.errors.put(paths.get(i),
+							cause instanceof IOException ? (IOException) cause : new IOException(cause));
+				}
+			}
+			return result;
+		}), fetches);
+	}
+
+	/**
+	 * Lists all variables of the account visible to the token, page by page. The
+	 * listing is narrowed by the resource search term and path prefix of the
+	 * configuration.
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration {@link ConjurConfiguration} containing the Conjur
+	 *                      authentication parameters
+	 * @param authToken     token to authenticate the request.
+	 * @return the variables
+	 * @throws IOException in case of error connecting to Conjur Server
+	 */
+	public static List<ConjurVariable> getVariables(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken) throws IOException {
+		return getVariables(client, configuration, authToken, VARIABLES_PAGE_SIZE);
+	}
+
+	static List<ConjurVariable> getVariables(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken, int pageSize) throws IOException {
+		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		String search = variablesSearch(configuration);
+
+		LOGGER.log(Level.FINE, "Fetching variables from Conjur");
+		List<ConjurVariable> variables = new ArrayList<ConjurVariable>();
+		for (int offset = 0;; offset += pageSize) {
+			List<ConjurVariable> page = execute(client,
+					variablesPageRequest(conjurAuthn, authToken, search, offset, pageSize),
+					variablesPageHandler(authToken));
+			variables.addAll(page);
+			if (page.size() < pageSize) {
+				return withPathPrefix(variables, configuration);
+			}
+		}
+	}
+
+	/**
+	 * Asynchronous variant of {@link ConjurAPI#getVariables}. The first page is
+	 * requested alone, if it is full the following pages are requested
+	 * concurrently in waves until a page is not full.
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration {@link ConjurConfiguration} containing the Conjur
+	 *                      authentication parameters
+	 * @param authToken     token to authenticate the request.
+	 * @return future completed with the variables
+	 */
+	public static CompletableFuture<List<ConjurVariable>> getVariablesAsync(OkHttpClient client,
+			ConjurConfiguration configuration, String authToken) {
+		return getVariablesAsync(client, configuration, authToken, VARIABLES_PAGE_SIZE);
+	}
+
+	static CompletableFuture<List<ConjurVariable>> getVariablesAsync(OkHttpClient client,
+			ConjurConfiguration configuration, String authToken, int pageSize) {
+		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		String search = variablesSearch(configuration);
+
+		LOGGER.log(Level.FINE, "Fetching variables from Conjur");
+		List<ConjurVariable> variables = new ArrayList<ConjurVariable>();
+		CompletableFuture<List<ConjurVariable>> listed = compose(
+				getVariablesPage(client, conjurAuthn, authToken, search, 0, pageSize), page -> {
+					variables.addAll(page);
+					if (page.size() < pageSize) {
+						return CompletableFuture.completedFuture(variables);
+					}
+					return getVariablesFrom(client, conjurAuthn, authToken, search, pageSize, pageSize, variables);
+				});
+		return SingleFlight.cancelling(listed.thenApply(all -> withPathPrefix(all, configuration)), listed);
+	}
+
+	private static CompletableFuture<List<ConjurVariable>> getVariablesFrom(OkHttpClient client,
+			ConjurAuthnInfo conjurAuthn, String authToken, String search, int offset, int pageSize,
+			List<ConjurVariable> variables) {
+		LOGGER.log(Level.FINE, "Fetching {0} pages of variables from offset {1}",
+				new Object[] { VARIABLES_PAGE_PARALLELISM, offset });
+		List<CompletableFuture<List<ConjurVariable>>> wave = new ArrayList<CompletableFuture<List<ConjurVariable>>>();
+		for (int i = 0; i < VARIABLES_PAGE_PARALLELISM; i++) {
+			wave.add(getVariablesPage(client, conjurAuthn, authToken, search, offset + i * pageSize, pageSize));
+		}
+		CompletableFuture<?>[] pages = wave.toArray(new CompletableFuture<?>[0]);
+		return compose(SingleFlight.cancelling(CompletableFuture.allOf(pages), pages), ignored -> {
+			for (CompletableFuture<List<ConjurVariable>> page : wave) {
+				List<ConjurVariable> resources = page.join();
+				variables.addAll(resources);
+				if (resources.size() < pageSize) {
+					return CompletableFuture.completedFuture(variables);
+				}
+			}
+			return getVariablesFrom(client, conjurAuthn, authToken, search, offset + wave.size() * pageSize,
+					pageSize, variables);
+		});
+	}
+
+	/**
+	 * Only an explicit search term is sent: the full-text search of Conjur does
+	 * not match path prefixes and the resource listing has no other filter, the
+	 * prefix is checked once the variables are listed. It does not reduce what
+	 * Conjur sends.
+	 */
+	private static String variablesSearch(ConjurConfiguration configuration) {
+		return configuration != null ? StringUtils.trimToNull(configuration.getResourceSearch()) : null;
+	}
+
+	private static List<ConjurVariable> withPathPrefix(List<ConjurVariable> variables,
+			ConjurConfiguration configuration) {
+		String prefix = configuration != null ? StringUtils.trimToNull(configuration.getResourcePathPrefix()) : null;
+		if (prefix != null) {
+			variables.removeIf(variable -> !variable.variablePath.startsWith(prefix));
+		}
+		return variables;
+	}
+
+	private static CompletableFuture<List<ConjurVariable>> getVariablesPage(OkHttpClient client,
+			ConjurAuthnInfo conjurAuthn, String authToken, String search, int offset, int pageSize) {
+		return enqueue(client, variablesPageRequest(conjurAuthn, authToken, search, offset, pageSize),
+				variablesPageHandler(authToken));
+	}
+
+	private static Request variablesPageRequest(ConjurAuthnInfo conjurAuthn, String authToken, String search,
+			int offset, int pageSize) {
+		return new Request.Builder()
+				.url(String.format("%s/resources/%s?kind=variable&limit=%d&offset=%d%s", conjurAuthn.applianceUrl,
+						conjurAuthn.account, pageSize, offset,
+						search != null ? "&search=" + URLEncoder.encode(search, StandardCharsets.UTF_8) : ""))
+				.get().addHeader("Authorization", "Token token=\"" + authToken + "\"").build();
+	}
+
+	private static ResponseHandler<List<ConjurVariable>> variablesPageHandler(String authToken) {
+		return response -> {
+			if (response.code() == 401) {
+				AccessTokenCache.invalidateToken(authToken);
+				throw new ConjurUnauthorizedException("Error fetching variables from Conjur [" + response.code()
+						+ " - " + response.message() + "\n" + response.body().string());
+			}
+			if (response.code() != 200) {
+				String result = response.body().string();
+				LOGGER.log(Level.FINE, "Error fetching variables from Conjur [" + response.code() + " - "
+						+ response.message() + "\n" + result);
+				throw new IOException("Error fetching variables from Conjur [" + response.code() + " - "
+						+ response.message() + "\n" + result);
+			}
+			return parseVariables(response.body().byteStream());
+		};
+	}
+
+	/**
+	 * Retrieves a single variable resource, with its annotations, without listing
+	 * the account
+	 * 
+	 * @param client        OkHttp client
+	 * @param configuration {@link ConjurConfiguration} containing the Conjur
+	 *                      authentication parameters
+	 * @param authToken     token to authenticate the request.
+	 * @param variablePath  path of the variable
+	 * @return the variable, or null if it does not exist or is not visible
+	 * @throws IOException in case of error connecting to Conjur Server
+	 */
+	public static ConjurVariable getVariable(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken, String variablePath) throws IOException {
+		ConjurAuthnInfo conjurAuthn = getConjurAuthnInfo(configuration, null, null);
+		Request request = new Request.Builder()
+				.url(String.format("%s/resources/%s/variable/%s", conjurAuthn.applianceUrl, conjurAuthn.account,
+						encodePath(variablePath)))
+				.get().addHeader("Authorization", "Token token=\"" + authToken + "\"").build();
+
+		return execute(client, request, response -> {
+			if (response.code() == 404 || response.code() == 403) {
+				return null;
+			}
+			if (response.code() == 401) {
+				AccessTokenCache.invalidateToken(authToken);
+				throw new ConjurUnauthorizedException("Error fetching variable from Conjur [" + response.code()
+						+ " - " + response.message() + "\n" + response.body().string());
+			}
+			if (response.code() != 200) {
+				throw new IOException("Error fetching variable from Conjur [" + response.code() + " - "
+						+ response.message() + "\n" + response.body().string());
+			}
+			try (JsonParser parser = JSON_FACTORY.createParser(response.body().byteStream())) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new IOException("Invalid response fetching variable from Conjur: object expected");
+				}
+				return parseVariable(parser);
+			}
+		});
+	}
+
+	/**
+	 * Encodes each segment of a variable path for use in a URL path, the slashes
+	 * separating the segments are kept
+	 * 
+	 * @param variablePath path of the variable
+	 * @return the encoded path
+	 */
+	static String encodePath(String variablePath) {
+		String[] segments = variablePath.split("/", -1);
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = URLEncoder.encode(segments[i], StandardCharsets.UTF_8).replace("+", "%20");
+		}
+		return String.join("/", segments);
+	}
+
+	/**
+	 * Reads the variables from a resource listing without building the whole
+	 * document, only the id and the jenkins_credential annotations are kept.
+	 * 
+	 * @param in the response body
+	 * @return the variables
+	 * @throws IOException if the listing cannot be read
+	 */
+	static List<ConjurVariable> parseVariables(InputStream in) throws IOException {
+		List<ConjurVariable> variables = new ArrayList<ConjurVariable>();
+		try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new IOException("Invalid response fetching variables from Conjur: array expected");
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				ConjurVariable variable = parseVariable(parser);
+				if (variable != null) {
+					variables.add(variable);
+				}
+			}
+		}
+		return variables;
+	}
+
+	private static ConjurVariable parseVariable(JsonParser parser) throws IOException {
+		ConjurVariable variable = new ConjurVariable();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("id".equals(field)) {
+				variable.variablePath = parser.getValueAsString().split(":")[2];
+			} else if ("annotations".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+				parseAnnotations(parser, variable);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return variable.variablePath != null ? variable : null;
+	}
+
+	private static void parseAnnotations(JsonParser parser, ConjurVariable variable) throws IOException {
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			String name = null;
+			String value = null;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				parser.nextToken();
+				if ("name".equals(field)) {
+					name = parser.getValueAsString();
+				} else if ("value".equals(field)) {
+					value = parser.getValueAsString();
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (name == null || value == null) {
+				continue;
+			}
+			switch (name.toLowerCase()) {
+			case "jenkins_credential_username":
+				variable.userName = value;
+				break;
+			case "jenkins_credential_type":
+				variable.credentialType = value.toLowerCase();
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
 	/**
 	 * Log the Conjur Configuration details
 	 * 
@@ -310,6 +1213,7 @@ public class ConjurAPI {
 			if (credential != null) {
 				conjurAuthn.login = credential.getUsername();
 				conjurAuthn.apiKey = credential.getPassword().getPlainText();
+				conjurAuthn.credentialID = credentialID;
 			}
 		}
 		LOGGER.log(Level.FINE, "End of initializeWithCredential()");
@@ -324,8 +1228,52 @@ public class ConjurAPI {
 	 */
 
 	public static ConjurConfiguration getConfigurationFromContext(ModelObject context, ModelObject storeContext) {
-		LOGGER.log(Level.FINE, "Start of getConfigurationFromContext()");
 		ModelObject effectiveContext = context != null ? context : storeContext;
+		String key = null;
+		if (effectiveContext instanceof Run) {
+			// builds also read the job property, their job does not
+			key = "run:" + ((Run<?, ?>) effectiveContext).getParent().getFullName();
+		} else if (effectiveContext instanceof AbstractItem) {
+			key = "item:" + ((AbstractItem) effectiveContext).getFullName();
+		}
+		if (key == null) {
+			return resolveConfiguration(effectiveContext);
+		}
+		Optional<ConjurConfiguration> configuration = effectiveConfigurations.getIfPresent(key);
+		if (configuration == null) {
+			configuration = Optional.ofNullable(resolveConfiguration(effectiveContext));
+			effectiveConfigurations.put(key, configuration);
+		}
+		return configuration.orElse(null);
+	}
+
+	/**
+	 * Forgets the cached effective configurations
+	 */
+	public static void invalidateConfigurations() {
+		LOGGER.log(Level.FINE, "Invalidating cached Conjur configurations");
+		effectiveConfigurations.invalidateAll();
+		ConjurCredentialStore.invalidateRegistryKeys();
+	}
+
+	/**
+	 * Forgets the cached effective configurations of an item and of the items
+	 * below it
+	 * 
+	 * @param fullName full name of the item
+	 */
+	public static void invalidateConfigurations(String fullName) {
+		LOGGER.log(Level.FINE, "Invalidating cached Conjur configurations of {0}", fullName);
+		String childPrefix = fullName + "/";
+		effectiveConfigurations.asMap().keySet().removeIf(key -> {
+			String name = key.substring(key.indexOf(':') + 1);
+			return name.equals(fullName) || name.startsWith(childPrefix);
+		});
+		ConjurCredentialStore.invalidateRegistryKeys(fullName);
+	}
+
+	private static ConjurConfiguration resolveConfiguration(ModelObject effectiveContext) {
+		LOGGER.log(Level.FINE, "Start of getConfigurationFromContext()");
 
 		Item contextObject = null;
 		ConjurJITJobProperty conjurJobConfig = null;
@@ -1,62 +1,305 @@
 package org.conjur.jenkins.api;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
 import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.configuration.GlobalConjurConfiguration;
+import org.conjur.jenkins.conjursecrets.CredentialResolutionCache;
+import org.conjur.jenkins.credentials.CredentialsSupplier;
 
 import com.cloudbees.plugins.credentials.CredentialsMatchers;
+import com.cloudbees.hudson.plugins.folder.AbstractFolder;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
 import com.cloudbees.plugins.credentials.common.CertificateCredentials;
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractItem;
+import hudson.model.Item;
+import hudson.model.ModelObject;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
 import hudson.security.ACL;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 
 /**
  * ConjurAPIUtils class used to build the OkHttp Client object and create
  * CertificateCredentials.
  * 
+ * Clients are long-lived and registered per appliance URL and certificate
+ * credential. They all share one connection pool and dispatcher, so repeated
+ * calls to Conjur reuse already established connections. The TLS material of
+ * a certificate credential is built once and reused until the credential
+ * changes.
  *
  */
 public class ConjurAPIUtils {
 
 	private static final Logger LOGGER = Logger.getLogger(ConjurAPIUtils.class.getName());
 
+	private static final String PROPERTY_PREFIX = ConjurAPIUtils.class.getName() + ".";
+
+	/** Maximum number of idle connections kept in the shared pool */
+	static final int MAX_IDLE_CONNECTIONS = SystemProperties.getInteger(PROPERTY_PREFIX + "maxIdleConnections", 20);
+
+	/** Time an idle connection is kept alive in the shared pool */
+	static final long KEEP_ALIVE_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "keepAliveSeconds", 300L);
+
+	static final long CONNECT_TIMEOUT_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "connectTimeoutSeconds", 10L);
+
+	static final long READ_TIMEOUT_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "readTimeoutSeconds", 10L);
+
+	static final long WRITE_TIMEOUT_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "writeTimeoutSeconds", 10L);
+
+	/** Maximum number of concurrent requests to Conjur, further asynchronous calls are queued */
+	static final int MAX_REQUESTS = SystemProperties.getInteger(PROPERTY_PREFIX + "maxRequests", 64);
+
+	static final int MAX_REQUESTS_PER_HOST = SystemProperties.getInteger(PROPERTY_PREFIX + "maxRequestsPerHost", 16);
+
+	/** Number of TLS sessions kept for resumption per certificate credential */
+	static final int TLS_SESSION_CACHE_SIZE = SystemProperties.getInteger(PROPERTY_PREFIX + "tlsSessionCacheSize", 100);
+
+	static final int TLS_SESSION_TIMEOUT_SECONDS = SystemProperties.getInteger(PROPERTY_PREFIX + "tlsSessionTimeoutSeconds", 3600);
+
+	/** File the system credentials store and its user variants are saved to */
+	private static final String CREDENTIALS_FILE = "credentials.xml";
+
+	private static final ConcurrentHashMap<String, HttpClientEntry> httpClients = new ConcurrentHashMap<String, HttpClientEntry>();
+
+	private static final ConcurrentHashMap<String, Optional<CertificateCredentials>> certificates = new ConcurrentHashMap<String, Optional<CertificateCredentials>>();
+
+	private static final ConcurrentHashMap<String, Optional<UsernamePasswordCredentials>> loginCredentials = new ConcurrentHashMap<String, Optional<UsernamePasswordCredentials>>();
+
+	private static final ConcurrentHashMap<String, TlsMaterial> tlsMaterials = new ConcurrentHashMap<String, TlsMaterial>();
+
+	private static volatile OkHttpClient baseClient;
+
+	/**
+	 * Registry entry holding the client built for one appliance URL and
+	 * certificate credential.
+	 */
+	private static final class HttpClientEntry {
+		private final TlsMaterial tlsMaterial;
+		private final OkHttpClient client;
+
+		private HttpClientEntry(TlsMaterial tlsMaterial, OkHttpClient client) {
+			this.tlsMaterial = tlsMaterial;
+			this.client = client;
+		}
+	}
+
+	/**
+	 * SSL socket factory and trust manager built from one version of a
+	 * certificate credential, identified by the fingerprint of its key store.
+	 */
+	static final class TlsMaterial {
+		private final CertificateCredentials certificate;
+		private final String fingerprint;
+		private final SSLSocketFactory socketFactory;
+		private final X509TrustManager trustManager;
+
+		private TlsMaterial(CertificateCredentials certificate, String fingerprint, SSLSocketFactory socketFactory,
+				X509TrustManager trustManager) {
+			this.certificate = certificate;
+			this.fingerprint = fingerprint;
+			this.socketFactory = socketFactory;
+			this.trustManager = trustManager;
+		}
+
+		private TlsMaterial withCertificate(CertificateCredentials certificate) {
+			return new TlsMaterial(certificate, fingerprint, socketFactory, trustManager);
+		}
+	}
+
+	/**
+	 * Drops the cached credential lookups whenever a credentials store or the
+	 * global Conjur configuration is saved. Jobs, builds, nodes and users are
+	 * ignored, saving them does not change any credential.
+	 */
+	@Extension
+	public static class CredentialsChangeListener extends SaveableListener {
+
+		@Override
+		public void onChange(Saveable o, XmlFile file) {
+			if (holdsCredentials(o, file)) {
+				invalidateCredentialCaches();
+			}
+		}
+	}
+
+	/**
+	 * @param o    the saved object
+	 * @param file the file it was saved to
+	 * @return true if the object is a credentials store or the global Conjur
+	 *         configuration
+	 */
+	static boolean holdsCredentials(Saveable o, XmlFile file) {
+		if (o instanceof SystemCredentialsProvider || o instanceof GlobalConjurConfiguration
+				|| o instanceof AbstractFolder) {
+			// folders keep their credentials store in their own configuration
+			return true;
+		}
+		return file != null && CREDENTIALS_FILE.equals(file.getFile().getName());
+	}
+
 	/**
 	 * static method to generate CertificateCredentials
 	 * 
 	 * @param ConjurConfiguration configuration
 	 * @return CertificateCredentials
 	 */
-	static synchronized CertificateCredentials certificateFromConfiguration(ConjurConfiguration configuration) {
+	static CertificateCredentials certificateFromConfiguration(ConjurConfiguration configuration) {
 		LOGGER.log(Level.FINE, "Start of certificateFromConfiguration()");
 
-		CertificateCredentials certificate = null;
-
-		if (configuration.getCertificateCredentialID() == null) {
+		String certificateCredentialID = configuration.getCertificateCredentialID();
+		if (certificateCredentialID == null) {
 			LOGGER.log(Level.FINE, "Return null, as CertificationID is null");
 			return null;
 		}
 
-		certificate = CredentialsMatchers.firstOrNull(
-				CredentialsProvider.lookupCredentials(CertificateCredentials.class, Jenkins.get(), ACL.SYSTEM,
-						Collections.<DomainRequirement>emptyList()),
-				CredentialsMatchers.withId(configuration.getCertificateCredentialID()));
+		Optional<CertificateCredentials> certificate = certificates.get(certificateCredentialID);
+		if (certificate == null) {
+			// not computeIfAbsent, the lookup may come back here through a credentials provider
+			certificate = Optional.ofNullable(CredentialsMatchers.firstOrNull(
+					CredentialsProvider.lookupCredentials(CertificateCredentials.class, Jenkins.get(), ACL.SYSTEM,
+							Collections.<DomainRequirement>emptyList()),
+					CredentialsMatchers.withId(certificateCredentialID)));
+			Optional<CertificateCredentials> raced = certificates.putIfAbsent(certificateCredentialID, certificate);
+			if (raced != null) {
+				certificate = raced;
+			}
+		}
 		LOGGER.log(Level.FINE, "Return CertificateCredential for CertificationCredentialID");
-		return certificate;
+		return certificate.orElse(null);
+	}
+
+	/**
+	 * Returns the username/password credential Conjur is logged in with. It is
+	 * looked up at the Jenkins root first, then in the job or item of the
+	 * context. Lookups, misses included, are cached until credentials change.
+	 * 
+	 * @param credentialID ID of the login credential
+	 * @param context      current context in which Jenkins Job are running
+	 * @return the login credential, or null if none has the ID
+	 */
+	static UsernamePasswordCredentials loginCredential(String credentialID, ModelObject context) {
+		if (credentialID == null || credentialID.isEmpty()) {
+			return null;
+		}
+		Item item = null;
+		if (context instanceof Run) {
+			item = ((Run<?, ?>) context).getParent();
+		} else if (context instanceof AbstractItem) {
+			item = (AbstractItem) context;
+		}
+		String key = credentialID + "|" + (item != null ? item.getFullName() : "");
+		Optional<UsernamePasswordCredentials> credential = loginCredentials.get(key);
+		if (credential == null) {
+			// not computeIfAbsent, the lookup may come back here through a credentials provider
+			credential = Optional.ofNullable(lookupLoginCredential(credentialID, item));
+			Optional<UsernamePasswordCredentials> raced = loginCredentials.putIfAbsent(key, credential);
+			if (raced != null) {
+				credential = raced;
+			}
+		}
+		return credential.orElse(null);
+	}
+
+	private static UsernamePasswordCredentials lookupLoginCredential(String credentialID, Item item) {
+		LOGGER.log(Level.FINE, "Looking up Conjur login credential {0}", credentialID);
+		UsernamePasswordCredentials credential = CredentialsMatchers.firstOrNull(
+				CredentialsProvider.lookupCredentials(UsernamePasswordCredentials.class, Jenkins.get(), ACL.SYSTEM,
+						Collections.<DomainRequirement>emptyList()),
+				CredentialsMatchers.withId(credentialID));
+		if (credential == null && item != null) {
+			credential = CredentialsMatchers.firstOrNull(
+					CredentialsProvider.lookupCredentials(UsernamePasswordCredentials.class, item, ACL.SYSTEM,
+							Collections.<DomainRequirement>emptyList()),
+					CredentialsMatchers.withId(credentialID));
+		}
+		return credential;
+	}
+
+	/**
+	 * Returns the TLS material for the certificate credential, building it only
+	 * when the credential was not seen before or its key store changed.
+	 * 
+	 * @param certificate the certificate credential
+	 * @return TlsMaterial for the current version of the credential
+	 */
+	static TlsMaterial tlsMaterialFor(CertificateCredentials certificate) {
+		return tlsMaterials.compute(certificate.getId(), (id, current) -> {
+			if (current != null && current.certificate == certificate) {
+				return current;
+			}
+			String fingerprint = fingerprint(certificate);
+			if (current != null && current.fingerprint.equals(fingerprint)) {
+				return current.withCertificate(certificate);
+			}
+			LOGGER.log(Level.FINE, "Building TLS material for certificate credential {0}", id);
+			return buildTlsMaterial(certificate, fingerprint);
+		});
+	}
+
+	/**
+	 * @param certificate the certificate credential
+	 * @return SHA-256 fingerprint over the aliases and certificates of the key
+	 *         store
+	 */
+	static String fingerprint(CertificateCredentials certificate) {
+		try {
+			KeyStore keyStore = certificate.getKeyStore();
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String alias : Collections.list(keyStore.aliases())) {
+				digest.update(alias.getBytes(StandardCharsets.UTF_8));
+				Certificate[] chain = keyStore.getCertificateChain(alias);
+				if (chain == null) {
+					Certificate entry = keyStore.getCertificate(alias);
+					chain = entry != null ? new Certificate[] { entry } : new Certificate[0];
+				}
+				for (Certificate c : chain) {
+					digest.update(c.getEncoded());
+				}
+			}
+			digest.update(certificate.getPassword().getPlainText().getBytes(StandardCharsets.UTF_8));
+			return Base64.getEncoder().encodeToString(digest.digest());
+		} catch (GeneralSecurityException e) {
+			throw new IllegalArgumentException("Error configuring server certificates.", e);
+		}
 	}
 
 	/**
@@ -66,10 +309,19 @@ public class ConjurAPIUtils {
 	 * @return OkHttpClient clientf
 	 */
 
-	static synchronized OkHttpClient httpClientWithCertificate(CertificateCredentials certificate) {
+	static OkHttpClient httpClientWithCertificate(CertificateCredentials certificate) {
 		LOGGER.log(Level.FINE, "Start of httpClientWithCertificate()");
-		OkHttpClient client = null;
+		OkHttpClient client = httpClientWithTlsMaterial(tlsMaterialFor(certificate));
+		LOGGER.log(Level.FINE, "End of httpClientWithCertificate()");
+		return client;
+	}
+
+	private static OkHttpClient httpClientWithTlsMaterial(TlsMaterial tlsMaterial) {
+		return getBaseClient().newBuilder().sslSocketFactory(tlsMaterial.socketFactory, tlsMaterial.trustManager)
+				.build();
+	}
 
+	private static TlsMaterial buildTlsMaterial(CertificateCredentials certificate, String fingerprint) {
 		try {
 
 			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
@@ -90,33 +342,107 @@ public class ConjurAPIUtils {
 			SSLContext sslContext = null;
 			sslContext = SSLContext.getInstance("TLSv1.2");
 			sslContext.init(kms, tms, new SecureRandom());
+			// Keep sessions so that new connections resume them instead of running a full handshake
+			SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+			sessionContext.setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+			sessionContext.setSessionTimeout(TLS_SESSION_TIMEOUT_SECONDS);
 
-			client = new OkHttpClient.Builder()
-					.sslSocketFactory(sslContext.getSocketFactory(), (X509TrustManager) tms[0]).build();
+			return new TlsMaterial(certificate, fingerprint, sslContext.getSocketFactory(), (X509TrustManager) tms[0]);
 		} catch (Exception e) {
 			throw new IllegalArgumentException("Error configuring server certificates.", e);
 		}
-		LOGGER.log(Level.FINE, "End of httpClientWithCertificate()");
-		return client;
-
 	}
 
 	/**
-	 * static method to get HttpClinet
+	 * static method to get HttpClinet. The client is taken from the registry and
+	 * only rebuilt when the appliance URL or the certificate credential changes.
 	 * 
 	 * @param ConjurConfiguration configuration
 	 * @return OkHttpClient client
 	 */
-	public static synchronized OkHttpClient getHttpClient(ConjurConfiguration configuration) {
+	public static OkHttpClient getHttpClient(ConjurConfiguration configuration) {
 		LOGGER.log(Level.FINE, "Start of getHttpClient()");
 
 		CertificateCredentials certificate = certificateFromConfiguration(configuration);
+		TlsMaterial tlsMaterial = certificate != null ? tlsMaterialFor(certificate) : null;
+		String key = configuration.getApplianceURL() + "|" + configuration.getCertificateCredentialID();
 
-		if (certificate != null) {
-			return httpClientWithCertificate(certificate);
-		}
+		HttpClientEntry entry = httpClients.compute(key, (k, current) -> {
+			if (current != null && sameSocketFactory(current.tlsMaterial, tlsMaterial)) {
+				return current;
+			}
+			LOGGER.log(Level.FINE, "Building HTTP client for {0}", k);
+			OkHttpClient client = tlsMaterial != null ? httpClientWithTlsMaterial(tlsMaterial) : getBaseClient();
+			return new HttpClientEntry(tlsMaterial, client);
+		});
 		LOGGER.log(Level.FINE, "End of getHttpClient()");
-		return new OkHttpClient.Builder().build();
+		return entry.client;
+	}
+
+	private static boolean sameSocketFactory(TlsMaterial a, TlsMaterial b) {
+		return a == null ? b == null : b != null && a.socketFactory == b.socketFactory;
+	}
+
+	/**
+	 * Removes all registered clients, they are rebuilt on next use.
+	 */
+	public static void invalidateHttpClients() {
+		LOGGER.log(Level.FINE, "Invalidating registered HTTP clients");
+		httpClients.clear();
+		tlsMaterials.clear();
+		invalidateCredentialCaches();
+	}
+
+	/**
+	 * Forgets the credentials looked up by ID, they are looked up again on next
+	 * use. Access tokens obtained with the previous credentials and the listings
+	 * shared between stores are dropped too.
+	 */
+	public static void invalidateCredentialCaches() {
+		LOGGER.log(Level.FINE, "Invalidating cached credential lookups");
+		certificates.clear();
+		loginCredentials.clear();
+		AccessTokenCache.invalidateAll();
+		CredentialResolutionCache.invalidateAll();
+		CredentialsSupplier.invalidateListings();
+	}
+
+	/**
+	 * @return the client owning the shared connection pool and dispatcher, every
+	 *         registered client is derived from it
+	 */
+	static OkHttpClient getBaseClient() {
+		OkHttpClient client = baseClient;
+		if (client == null) {
+			synchronized (ConjurAPIUtils.class) {
+				client = baseClient;
+				if (client == null) {
+					client = new OkHttpClient.Builder()
+							.connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS))
+							.dispatcher(newDispatcher())
+							.connectTimeout(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+							.readTimeout(READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+							.writeTimeout(WRITE_TIMEOUT_SECONDS, TimeUnit.SECONDS).build();
+					baseClient = client;
+				}
+			}
+		}
+		return client;
+	}
+
+	/**
+	 * @return dispatcher running the asynchronous calls on daemon threads, at most
+	 *         {@link #MAX_REQUESTS} at a time. The bound is enforced by the
+	 *         dispatcher, the executor must not reject a promoted call.
+	 */
+	private static Dispatcher newDispatcher() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(),
+				new NamingThreadFactory(new DaemonThreadFactory(), "Conjur HTTP dispatcher"));
+		Dispatcher dispatcher = new Dispatcher(executor);
+		dispatcher.setMaxRequests(MAX_REQUESTS);
+		dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+		return dispatcher;
 	}
 
-}
\ No newline at end of file
+}
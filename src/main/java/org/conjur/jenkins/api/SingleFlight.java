@@ -0,0 +1,221 @@
+package org.conjur.jenkins.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the
+ * loader, callers arriving while it runs wait for and share its result. The
+ * result is not kept once the call completes.
+ *
+ * @param <K> key type
+ * @param <V> result type
+ */
+public final class SingleFlight<K, V> {
+
+	/**
+	 * Loads the value for a key, may fail with an IOException
+	 *
+	 * @param <V> result type
+	 */
+	@FunctionalInterface
+	public interface Loader<V> {
+		V load() throws IOException;
+	}
+
+	/**
+	 * A call in flight and the number of callers waiting for it
+	 *
+	 * @param <V> result type
+	 */
+	private static final class Call<V> {
+		private final CompletableFuture<V> result = new CompletableFuture<V>();
+
+		/** the asynchronous load, cancelled once no caller waits for it */
+		private volatile CompletableFuture<V> loading;
+
+		private int waiters = 1;
+
+		/** @return false if every caller gave up on the call */
+		private synchronized boolean join() {
+			if (waiters == 0) {
+				return false;
+			}
+			waiters++;
+			return true;
+		}
+
+		/** @return true if the last waiting caller gave up on the call */
+		private synchronized boolean leave() {
+			return waiters > 0 && --waiters == 0;
+		}
+	}
+
+	private final ConcurrentHashMap<K, Call<V>> calls = new ConcurrentHashMap<K, Call<V>>();
+
+	/**
+	 * Runs the loader, or joins the call already in flight for the key
+	 *
+	 * @param key    key identifying the call
+	 * @param loader loader to run if no call is in flight
+	 * @return the loaded value
+	 * @throws IOException if the loader failed
+	 */
+	public V execute(K key, Loader<V> loader) throws IOException {
+		Call<V> call = new Call<V>();
+		Call<V> inFlight = join(key, call);
+		if (inFlight != null) {
+			return await(inFlight.result);
+		}
+		try {
+			V value = loader.load();
+			call.result.complete(value);
+			return value;
+		} catch (IOException | RuntimeException | Error e) {
+			call.result.completeExceptionally(e);
+			throw e;
+		} finally {
+			calls.remove(key, call);
+		}
+	}
+
+	/**
+	 * Starts the asynchronous loader, or joins the call already in flight for the
+	 * key. Each caller gets its own future: cancelling it only stops that caller
+	 * waiting, the load is cancelled once no caller waits for it anymore.
+	 *
+	 * @param key    key identifying the call
+	 * @param loader starts the call if no call is in flight
+	 * @return future completed with the loaded value
+	 */
+	public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+		Call<V> call = new Call<V>();
+		Call<V> inFlight = join(key, call);
+		if (inFlight != null) {
+			return waiter(key, inFlight);
+		}
+		try {
+			CompletableFuture<V> loading = loader.get();
+			call.loading = loading;
+			loading.whenComplete((value, error) -> {
+				calls.remove(key, call);
+				if (error != null) {
+					call.result.completeExceptionally(
+							error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+				} else {
+					call.result.complete(value);
+				}
+			});
+		} catch (RuntimeException | Error e) {
+			calls.remove(key, call);
+			call.result.completeExceptionally(e);
+		}
+		return waiter(key, call);
+	}
+
+	/**
+	 * Registers the call for the key, or joins the one in flight
+	 *
+	 * @return the call in flight that was joined, or null if the call was
+	 *         registered
+	 */
+	private Call<V> join(K key, Call<V> call) {
+		while (true) {
+			Call<V> inFlight = calls.putIfAbsent(key, call);
+			if (inFlight == null) {
+				return null;
+			}
+			if (inFlight.join()) {
+				return inFlight;
+			}
+			// abandoned by all its callers, it is being cancelled
+			calls.remove(key, inFlight);
+		}
+	}
+
+	private CompletableFuture<V> waiter(K key, Call<V> call) {
+		CompletableFuture<V> waiter = new CompletableFuture<V>();
+		call.result.whenComplete((value, error) -> {
+			if (error != null) {
+				waiter.completeExceptionally(error);
+			} else {
+				waiter.complete(value);
+			}
+		});
+		waiter.whenComplete((value, error) -> {
+			if (waiter.isCancelled() && call.leave()) {
+				calls.remove(key, call);
+				CompletableFuture<V> loading = call.loading;
+				if (loading != null) {
+					loading.cancel(true);
+				}
+			}
+		});
+		return waiter;
+	}
+
+	/**
+	 * @param key key identifying the call
+	 * @return true if a call for the key is running
+	 */
+	public boolean isInFlight(K key) {
+		return calls.containsKey(key);
+	}
+
+	/**
+	 * Cancels the futures a result is derived from once the result is cancelled.
+	 * The dependent stages of a CompletableFuture do not do that on their own.
+	 *
+	 * @param <T>     result type
+	 * @param result  future derived from the sources
+	 * @param sources futures to cancel with the result
+	 * @return the result
+	 */
+	static <T> CompletableFuture<T> cancelling(CompletableFuture<T> result, CompletableFuture<?>... sources) {
+		result.whenComplete((value, error) -> {
+			if (result.isCancelled()) {
+				for (CompletableFuture<?> source : sources) {
+					source.cancel(true);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Waits for the future and rethrows its failure as the original exception
+	 *
+	 * @param <T>    result type
+	 * @param future future to wait for
+	 * @return the result of the future
+	 * @throws IOException if the future failed with an IOException or the wait
+	 *                     was interrupted
+	 */
+	public static <T> T await(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for Conjur");
+			interrupted.initCause(e);
+			throw interrupted;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
@@ -2,7 +2,6 @@ package org.conjur.jenkins.configuration;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -13,6 +12,7 @@ import java.util.logging.Logger;
 import javax.servlet.ServletException;
 
 import org.apache.commons.lang.StringUtils;
+import org.conjur.jenkins.conjursecrets.CredentialResolutionCache;
 import org.conjur.jenkins.credentials.ConjurCredentialProvider;
 import org.conjur.jenkins.credentials.ConjurCredentialStore;
 import org.conjur.jenkins.credentials.CredentialsSupplier;
@@ -138,15 +138,16 @@ public class ConjurConfiguration extends AbstractDescribableImpl<ConjurConfigura
 				return FormValidation.error(error);
 			}		
 			if (item != null) {
-				String key = String.valueOf(item.hashCode());            
+				String key = ConjurCredentialStore.registryKey(item);
 				Supplier<Collection<StandardCredentials>> supplier;
 				if (ConjurCredentialStore.getAllStores().containsKey(key)) {
 					LOGGER.log(Level.FINE, "Resetting Credential Supplier : {0},{1},{2}",
-							new Object[] { item.getClass().getName(), item, item.hashCode() });
+							new Object[] { item.getClass().getName(), item, key });
 
-					supplier = ConjurCredentialProvider.memoizeWithExpiration(CredentialsSupplier.standard(item),
-							Duration.ofSeconds(120));
+					supplier = ConjurCredentialProvider.newCredentialSupplier(item);
 					ConjurCredentialProvider.getAllCredentialSuppliers().put(key, supplier);
+					CredentialResolutionCache.invalidateAll();
+					CredentialsSupplier.invalidateListings();
 				}
 				return FormValidation.ok("Refreshed");
  			} else {
@@ -185,6 +186,9 @@ public class ConjurConfiguration extends AbstractDescribableImpl<ConjurConfigura
 	private String credentialID;
 	private String certificateCredentialID;
 	private String ownerFullName;
+	private Long credentialStoreTtlSeconds;
+	private String resourcePathPrefix;
+	private String resourceSearch;
 
 	public ConjurConfiguration() {
 	}
@@ -245,6 +249,24 @@ public class ConjurConfiguration extends AbstractDescribableImpl<ConjurConfigura
 		return ownerFullName;
 	}
 
+	/** @return how long the credential store keeps the Conjur listing, if set */
+	public Long getCredentialStoreTtlSeconds() {
+		return credentialStoreTtlSeconds;
+	}
+
+	/**
+	 * @return the path prefix the variables listed by the credential store are
+	 *         filtered by in Jenkins, if any
+	 */
+	public String getResourcePathPrefix() {
+		return resourcePathPrefix;
+	}
+
+	/** @return the Conjur search term narrowing the credential store listing, if any */
+	public String getResourceSearch() {
+		return resourceSearch;
+	}
+
 
 	/**
 	 * Together with {@link #getAccount}, binds to entry in {@code config.jelly}.
@@ -293,6 +315,42 @@ public class ConjurConfiguration extends AbstractDescribableImpl<ConjurConfigura
 		this.credentialID = credentialID;
 	}
 
+	/**
+	 * Together with {@link #getCredentialStoreTtlSeconds}, binds to entry in
+	 * {@code config.jelly}.
+	 * 
+	 * @param credentialStoreTtlSeconds seconds the credential store keeps the
+	 *                                  Conjur listing, default when empty
+	 */
+	@DataBoundSetter
+	public void setCredentialStoreTtlSeconds(Long credentialStoreTtlSeconds) {
+		this.credentialStoreTtlSeconds = credentialStoreTtlSeconds;
+	}
+
+	/**
+	 * Together with {@link #getResourcePathPrefix}, binds to entry in
+	 * {@code config.jelly}.
+	 * 
+	 * @param resourcePathPrefix only variables below this path are kept once
+	 *                           listed, Conjur still sends the others
+	 */
+	@DataBoundSetter
+	public void setResourcePathPrefix(String resourcePathPrefix) {
+		this.resourcePathPrefix = resourcePathPrefix;
+	}
+
+	/**
+	 * Together with {@link #getResourceSearch}, binds to entry in
+	 * {@code config.jelly}.
+	 * 
+	 * @param resourceSearch passed as {@code search} to the Conjur resource
+	 *                       listing, matches ids and annotations
+	 */
+	@DataBoundSetter
+	public void setResourceSearch(String resourceSearch) {
+		this.resourceSearch = resourceSearch;
+	}
+
 	/**
 	 * Together with {@link #getOwnerFullName}, binds to entry in
 	 * {@code config.jelly}.
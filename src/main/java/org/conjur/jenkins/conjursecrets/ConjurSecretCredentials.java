@@ -46,10 +46,29 @@ public interface ConjurSecretCredentials extends StandardCredentials {
 
 	Secret getSecret();
 
+	/**
+	 * Resolves the secret for the request without changing the credential, so
+	 * concurrent builds can share it. Implementations not overriding this fall
+	 * back to setting the context under the credential's lock.
+	 *
+	 * @param request context and configuration to resolve the secret for
+	 * @return the secret
+	 */
+	default Secret getSecret(ConjurSecretRequest request) {
+		synchronized (this) {
+			setConjurConfiguration(request.getConfiguration());
+			setContext(request.getContext());
+			return getSecret();
+		}
+	}
+
+	/**
+	 * @deprecated use {@link #getSecret(ConjurSecretRequest)}, which does not
+	 *             change the credential
+	 */
+	@Deprecated
 	default Secret secretWithConjurConfigAndContext(ConjurConfiguration conjurConfiguration, ModelObject context) {
-		setConjurConfiguration(conjurConfiguration);
-		setContext(context);
-		return getSecret();
+		return getSecret(ConjurSecretRequest.of(context, conjurConfiguration));
 	}
 
 	void setConjurConfiguration(ConjurConfiguration conjurConfiguration);
@@ -100,7 +119,8 @@ public interface ConjurSecretCredentials extends StandardCredentials {
 	}
 
 	/**
-	 * static method to fetch the credentials from the Context
+	 * static method to fetch the credentials from the Context. Resolutions,
+	 * including misses, are cached per ID and context.
 	 *
 	 * @param selected    ConjurSecretcredential
 	 * @param selected    or incoming CredentialId
@@ -109,6 +129,11 @@ public interface ConjurSecretCredentials extends StandardCredentials {
 	 */
 
 	static ConjurSecretCredentials credentialWithID(String credentialID, ModelObject context) {
+		return CredentialResolutionCache.resolve(credentialID, context,
+				() -> lookupCredentialWithID(credentialID, context));
+	}
+
+	private static ConjurSecretCredentials lookupCredentialWithID(String credentialID, ModelObject context) {
 		LOGGER.log(Level.FINE, "Start of credentialWithID()");
 		ConjurSecretCredentials credential, conjurSecretCredential = null;
 		// First, try to fetch credentials from the global Jenkins context
@@ -198,20 +223,12 @@ public interface ConjurSecretCredentials extends StandardCredentials {
 			ConjurConfiguration conjurConfiguration, ModelObject context, ModelObject storeContext) {
 
 		LOGGER.log(Level.FINE, "Start of  the getSecretFromCredentialIDWithConfigAndContext()");
-		Secret secret = null;
 
 		ModelObject effectiveContext = context != null ? context : storeContext;
 
 		LOGGER.log(Level.FINE, "Getting Secret with CredentialID: {0},{1}", new Object[] { context, credentialID });
 
-		ConjurSecretCredentials credential = credentialWithID(credentialID, effectiveContext);
-
-		if (credential != null) {
-
-			LOGGER.log(Level.FINE, "Getting Secret Inside If with CredentialID: " + credential.getId());
-			secret = credential.secretWithConjurConfigAndContext(conjurConfiguration, effectiveContext);
-
-		}
+		Secret secret = LinkedCredential.resolve(credentialID, conjurConfiguration, effectiveContext).getSecret();
 		LOGGER.log(Level.FINE, "End of  the getSecretFromCredentialIDWithConfigAndContext()");
 
 		return secret;
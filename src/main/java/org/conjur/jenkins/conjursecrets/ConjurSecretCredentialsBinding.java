@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 
 import javax.annotation.Nonnull;
 
+import org.conjur.jenkins.credentials.ConjurCredentialProvider;
 import org.conjur.jenkins.credentials.ConjurCredentialStore;
 import org.jenkinsci.Symbol;
 import org.jenkinsci.plugins.credentialsbinding.BindingDescriptor;
@@ -26,6 +27,7 @@ import hudson.model.Descriptor;
 import hudson.model.Item;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.util.Secret;
 import jenkins.model.Jenkins;
 
 /**
@@ -85,42 +87,54 @@ public class ConjurSecretCredentialsBinding extends MultiBinding<ConjurSecretCre
 		long start = System.nanoTime();
 		LOGGER.log(Level.FINE, "**** binding **** : " + build);
 		ConjurCredentialStore store = ConjurCredentialStore.getAllStores()
-				.get(String.valueOf(build.getParent().hashCode()));
+				.get(ConjurCredentialStore.registryKey(build.getParent()));
 
 		if (store != null) {
 			LOGGER.log(Level.FINE, "Store details" + store);
-			store.getProvider().getStore(build);
+			store.getProvider().getStore(build.getParent());
 		}
 
 		ConjurSecretCredentials conjurSecretCredential = getCredentialsFor(build);
 		LOGGER.log(Level.FINE, "Get Parent flage status", isParent);
+		// the credential may be shared with concurrent builds, the context goes in the request
+		ConjurSecretRequest request = ConjurSecretRequest.of(null);
 		if (!isParent) {
 			LOGGER.log(Level.FINE, "Context Set");
-			conjurSecretCredential.setContext(build);
+			request = ConjurSecretRequest.of(build);
 
 		} else {
 			LOGGER.log(Level.FINE, "Context Set not for parent" + conjurSecretCredential.getDescription());
 			if (conjurSecretCredential != null) {
 				Item item = Jenkins.get().getItemByFullName(conjurSecretCredential.getDescription());// build.getParent();
 				if (item != null) {
-					conjurSecretCredential.setContext(item);
+					request = ConjurSecretRequest.of(item);
 
 					LOGGER.log(Level.FINE, "Context Set not for parent" + item.getDisplayName());
+				} else if (!hasStoreContext(conjurSecretCredential)) {
+					// without a context there is nothing to authenticate with
+					throw new CredentialNotFoundException("Could not resolve the item '"
+							+ conjurSecretCredential.getDescription() + "' of credentials entry with ID '"
+							+ credentialsId + "'");
 				}
 			}
 
 		}
+		Secret secret = conjurSecretCredential.getSecret(request);
 		long end = System.nanoTime();
 		long execution = end - start;
 	    LOGGER.log(Level.OFF,"Execution of Class ConjurSecretCredentialsBinding -->Method bind() time: "+ execution/1000000d + " milliseconds");
-		return new MultiEnvironment(
-				Collections.singletonMap(variable, conjurSecretCredential.getSecret().getPlainText()));
+		return new MultiEnvironment(Collections.singletonMap(variable, secret.getPlainText()));
 	}
 
 
+	private static boolean hasStoreContext(ConjurSecretCredentials credential) {
+		return credential instanceof ConjurSecretCredentialsImpl
+				&& ((ConjurSecretCredentialsImpl) credential).hasStoreContext();
+	}
+
 	private final @Nonnull <C> C getCredentialsFor(@Nonnull Run<?, ?> build) throws IOException ,InterruptedException{
 		long start = System.nanoTime();
-		IdCredentials cred = CredentialsProvider.findCredentialById(credentialsId, IdCredentials.class, build);
+		IdCredentials cred = ConjurCredentialProvider.findCredentialById(credentialsId, IdCredentials.class, build);
 		LOGGER.log(Level.FINE, "Calling getCredential For1" + build.getFullDisplayName());
 		String newCredentialId = "";
 
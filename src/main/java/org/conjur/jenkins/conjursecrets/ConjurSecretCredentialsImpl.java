@@ -1,6 +1,12 @@
 package org.conjur.jenkins.conjursecrets;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -8,7 +14,9 @@ import javax.annotation.CheckForNull;
 
 import org.conjur.jenkins.api.ConjurAPI;
 import org.conjur.jenkins.api.ConjurAPIUtils;
+import org.conjur.jenkins.api.SingleFlight;
 import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.exceptions.ConjurUnauthorizedException;
 import org.conjur.jenkins.exceptions.InvalidConjurSecretException;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -89,21 +97,38 @@ public class ConjurSecretCredentialsImpl extends BaseStandardCredentials impleme
 	 */
 	public Secret getSecret() {
 		LOGGER.log(Level.FINE, "Start of Class ConjurSecretCredentialsImpl *****getSecret()*****");
+		LOGGER.log(Level.FINE, "Start of getSecret() *****this.context*****: " + this.context);
+		return fetchSecret(this.conjurConfiguration, getEffectiveContext());
+	}
+
+	/**
+	 * @return the Secret for the request, the credential itself is not changed
+	 */
+	@Override
+	public Secret getSecret(ConjurSecretRequest request) {
+		return fetchSecret(configurationFor(request), effectiveContextFor(request));
+	}
+
+	Secret fetchSecret(ConjurConfiguration configuration, ModelObject effectiveContext) {
 		String result = "";
 		try {
 			// Get Http Client
-			OkHttpClient client = ConjurAPIUtils.getHttpClient(this.conjurConfiguration);
+			OkHttpClient client = ConjurAPIUtils.getHttpClient(configuration);
 			// Non-global credentials in the current context and multi-branch store context
-			ModelObject effectiveContext = (storeContext != null) ? storeContext : this.context;
-			LOGGER.log(Level.FINE, "Start of getSecret() *****this.context*****: " + this.context);
 			LOGGER.log(Level.FINE, "Start of getSecret() *****storeContext*****: " + storeContext);
 			LOGGER.log(Level.FINE, "Start of getSecret() *****effectiveContext*****: " + effectiveContext);
 			if (effectiveContext != null) {
 				// Authenticate to Conjur
-				String authToken = ConjurAPI.getAuthorizationToken(client, this.conjurConfiguration, effectiveContext);
+				String authToken = ConjurAPI.getAuthorizationToken(client, configuration, effectiveContext);
 				// Retrieve secret from Conjur
-				String secretString = ConjurAPI.getSecret(client, this.conjurConfiguration, authToken,
-						this.variablePath);
+				String secretString;
+				try {
+					secretString = ConjurAPI.getSecret(client, configuration, authToken, this.variablePath);
+				} catch (ConjurUnauthorizedException e) {
+					LOGGER.log(Level.FINE, "Access token rejected, authenticating again");
+					authToken = ConjurAPI.getAuthorizationToken(client, configuration, effectiveContext);
+					secretString = ConjurAPI.getSecret(client, configuration, authToken, this.variablePath);
+				}
 				result = secretString;
 			}
 		} catch (IOException e) {
@@ -114,6 +139,115 @@ public class ConjurSecretCredentialsImpl extends BaseStandardCredentials impleme
 		return secretFromString(result);
 	}
 
+	/**
+	 * Retrieves the secrets of several credentials, authenticating once and
+	 * sending batch requests per Conjur configuration and context. The groups are
+	 * retrieved concurrently. The credentials are not changed.
+	 * 
+	 * @param <K>         key of each secret to retrieve, one credential may be
+	 *                    retrieved under several keys
+	 * @param credentials credential of each key
+	 * @param requests    request each key is resolved for
+	 * @param errors      receives the failure of each key whose secret could not
+	 *                    be retrieved
+	 * @return the secret of each key that was retrieved
+	 */
+	public static <K> Map<K, Secret> getSecrets(Map<K, ConjurSecretCredentialsImpl> credentials,
+			Map<K, ConjurSecretRequest> requests, Map<K, IOException> errors) {
+		LOGGER.log(Level.FINE, "Start of getSecrets() for {0} credentials", credentials.size());
+		Map<List<Object>, List<K>> groups = new LinkedHashMap<List<Object>, List<K>>();
+		for (Map.Entry<K, ConjurSecretCredentialsImpl> entry : credentials.entrySet()) {
+			ConjurSecretCredentialsImpl credential = entry.getValue();
+			ConjurSecretRequest request = requests.get(entry.getKey());
+			groups.computeIfAbsent(
+					Arrays.asList(credential.configurationFor(request), credential.effectiveContextFor(request)),
+					key -> new ArrayList<K>()).add(entry.getKey());
+		}
+
+		Map<K, Secret> secrets = new LinkedHashMap<K, Secret>();
+		List<List<Object>> pendingKeys = new ArrayList<List<Object>>();
+		List<List<K>> pending = new ArrayList<List<K>>();
+		List<CompletableFuture<ConjurAPI.ConjurSecretsResult>> calls = new ArrayList<CompletableFuture<ConjurAPI.ConjurSecretsResult>>();
+		for (Map.Entry<List<Object>, List<K>> entry : groups.entrySet()) {
+			List<K> group = entry.getValue();
+			ConjurConfiguration configuration = (ConjurConfiguration) entry.getKey().get(0);
+			ModelObject effectiveContext = (ModelObject) entry.getKey().get(1);
+			if (effectiveContext == null) {
+				group.forEach(key -> secrets.put(key, secretFromString("")));
+				continue;
+			}
+			List<String> variablePaths = variablePaths(group, credentials);
+			OkHttpClient client = ConjurAPIUtils.getHttpClient(configuration);
+			pendingKeys.add(entry.getKey());
+			pending.add(group);
+			calls.add(ConjurAPI.getAuthorizationTokenAsync(client, configuration, effectiveContext)
+					.thenCompose(authToken -> ConjurAPI.getSecretsAsync(client, configuration, authToken, variablePaths)));
+		}
+
+		for (int i = 0; i < pending.size(); i++) {
+			List<K> group = pending.get(i);
+			ConjurConfiguration configuration = (ConjurConfiguration) pendingKeys.get(i).get(0);
+			ModelObject effectiveContext = (ModelObject) pendingKeys.get(i).get(1);
+			List<String> variablePaths = variablePaths(group, credentials);
+			try {
+				ConjurAPI.ConjurSecretsResult result;
+				try {
+					result = SingleFlight.await(calls.get(i));
+				} catch (ConjurUnauthorizedException e) {
+					LOGGER.log(Level.FINE, "Access token rejected, authenticating again");
+					OkHttpClient client = ConjurAPIUtils.getHttpClient(configuration);
+					String authToken = ConjurAPI.getAuthorizationToken(client, configuration, effectiveContext);
+					result = ConjurAPI.getSecrets(client, configuration, authToken, variablePaths);
+				}
+				for (K key : group) {
+					String variablePath = credentials.get(key).variablePath;
+					String secretString = result.secrets.get(variablePath);
+					if (secretString != null) {
+						secrets.put(key, secretFromString(secretString));
+					} else {
+						errors.put(key, result.errors.get(variablePath));
+					}
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.SEVERE, "EXCEPTION: " + e.getMessage());
+				group.forEach(key -> errors.put(key, e));
+			}
+		}
+		LOGGER.log(Level.FINE, "End of getSecrets()");
+		return secrets;
+	}
+
+	private static <K> List<String> variablePaths(List<K> keys, Map<K, ConjurSecretCredentialsImpl> credentials) {
+		List<String> variablePaths = new ArrayList<String>();
+		keys.forEach(key -> variablePaths.add(credentials.get(key).variablePath));
+		return variablePaths;
+	}
+
+	private ModelObject getEffectiveContext() {
+		return (storeContext != null) ? storeContext : this.context;
+	}
+
+	private ModelObject effectiveContextFor(ConjurSecretRequest request) {
+		return (storeContext != null) ? storeContext : request.getContext();
+	}
+
+	private ConjurConfiguration configurationFor(ConjurSecretRequest request) {
+		// the configuration in effect for the context wins, as it did in setContext
+		ConjurConfiguration configuration = ConjurAPI.getConfigurationFromContext(request.getContext(), storeContext);
+		if (configuration == null) {
+			configuration = request.getConfiguration();
+		}
+		return configuration != null ? configuration : this.conjurConfiguration;
+	}
+
+	/**
+	 * @return true if the credential was provided by a Conjur store and resolves
+	 *         in the context of the store
+	 */
+	boolean hasStoreContext() {
+		return storeContext != null;
+	}
+
 	/**
 	 * 
 	 * @return variablePath as String
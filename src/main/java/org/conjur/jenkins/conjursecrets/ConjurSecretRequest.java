@@ -0,0 +1,58 @@
+package org.conjur.jenkins.conjursecrets;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+
+import hudson.model.ModelObject;
+
+/**
+ * Immutable context and Conjur configuration a secret is resolved for. Passing
+ * it to {@link ConjurSecretCredentials#getSecret(ConjurSecretRequest)} leaves
+ * the credential untouched, so builds sharing a credential instance resolve it
+ * concurrently without seeing each other's context.
+ */
+public final class ConjurSecretRequest {
+
+	private final ModelObject context;
+
+	private final ConjurConfiguration configuration;
+
+	private ConjurSecretRequest(ModelObject context, ConjurConfiguration configuration) {
+		this.context = context;
+		this.configuration = configuration;
+	}
+
+	/**
+	 * @param context build or item the secret is resolved for, may be null
+	 * @return request with the Conjur configuration effective for the context
+	 */
+	public static ConjurSecretRequest of(ModelObject context) {
+		return new ConjurSecretRequest(context,
+				context != null ? ConjurAPI.getConfigurationFromContext(context, null) : null);
+	}
+
+	/**
+	 * @param context       build or item the secret is resolved for, may be null
+	 * @param configuration Conjur configuration to use, null to use the one
+	 *                      effective for the credential
+	 * @return the request
+	 */
+	public static ConjurSecretRequest of(ModelObject context, ConjurConfiguration configuration) {
+		return new ConjurSecretRequest(context, configuration);
+	}
+
+	/** @return the build or item the secret is resolved for, may be null */
+	public ModelObject getContext() {
+		return context;
+	}
+
+	/** @return the Conjur configuration, may be null */
+	public ConjurConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	@Override
+	public String toString() {
+		return "ConjurSecretRequest[" + context + "]";
+	}
+}
@@ -22,6 +22,7 @@ import hudson.FilePath;
 import hudson.Launcher;
 import hudson.model.Run;
 import hudson.model.TaskListener;
+import hudson.util.Secret;
 
 /**
  * Bind the ConjurSecretCredential based on UserNameCredential
@@ -68,18 +69,19 @@ public class ConjurSecretUsernameCredentialsBinding extends MultiBinding<ConjurS
 		LOGGER.log(Level.FINE, "Start of bind()");
 		LOGGER.log(Level.FINE, "Binding UserName and Password");
 
-		ConjurCredentialStore store = ConjurCredentialStore.getAllStores().get(String.valueOf(build.getParent().hashCode()));
+		ConjurCredentialStore store = ConjurCredentialStore.getAllStores()
+				.get(ConjurCredentialStore.registryKey(build.getParent()));
 		if (store != null) {
-			store.getProvider().getStore(build);
+			store.getProvider().getStore(build.getParent());
 		}
 
 		ConjurSecretUsernameCredentials conjurSecretCredential = getCredentials(build);
-		conjurSecretCredential.setContext(build);
+		Secret password = conjurSecretCredential.getSecret(ConjurSecretRequest.of(build));
 
 		Map<String, String> m = new HashMap<>();
-		if (conjurSecretCredential.getPassword() != null) {
+		if (password != null) {
 			m.put(usernameVariable, conjurSecretCredential.getUsername());
-			m.put(passwordVariable, conjurSecretCredential.getPassword().getPlainText());
+			m.put(passwordVariable, password.getPlainText());
 		} else {
 			throw new CredentialNotFoundException(
 					"Could not find Conjur Secret Username Credentials entry is null or invalid.");
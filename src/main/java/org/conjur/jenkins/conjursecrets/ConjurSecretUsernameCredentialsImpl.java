@@ -187,9 +187,23 @@ public class ConjurSecretUsernameCredentialsImpl extends BaseStandardCredentials
 	 */
 	@Override
 	public Secret getPassword() {
-		return ConjurSecretCredentials.getSecretFromCredentialIDWithConfigAndContext(this.getCredentialID(),
-				this.conjurConfiguration, this.context, this.storeContext);
+		return secretFor(this.conjurConfiguration, this.context);
+	}
+
+	/**
+	 * @return password for the request, the credential itself is not changed
+	 */
+	@Override
+	public Secret getSecret(ConjurSecretRequest request) {
+		ConjurConfiguration configuration = request.getConfiguration() != null ? request.getConfiguration()
+				: this.conjurConfiguration;
+		return secretFor(configuration, request.getContext());
+	}
 
+	private Secret secretFor(ConjurConfiguration configuration, ModelObject context) {
+		// resolved on each call, CredentialResolutionCache keeps the lookup per context
+		return LinkedCredential.resolve(this.getCredentialID(), configuration,
+				context != null ? context : this.storeContext).getSecret();
 	}
 
 	/**
@@ -27,6 +27,24 @@ public interface ConjurSecretUsernameSSHKeyCredentials extends SSHUserPrivateKey
 
 	String getPrivateKey();
 
+	/**
+	 * Resolves the private key for the request without changing the credential.
+	 * Implementations not overriding this fall back to setting the context under
+	 * the credential's lock.
+	 *
+	 * @param request context and configuration to resolve the key for
+	 * @return the private key
+	 */
+	default String getPrivateKey(ConjurSecretRequest request) {
+		synchronized (this) {
+			if (request.getConfiguration() != null) {
+				setConjurConfiguration(request.getConfiguration());
+			}
+			setContext(request.getContext());
+			return getPrivateKey();
+		}
+	}
+
 	void setConjurConfiguration(ConjurConfiguration conjurConfiguration);
 
 	public static class NameProvider extends CredentialsNameProvider<StandardUsernameCredentials> {
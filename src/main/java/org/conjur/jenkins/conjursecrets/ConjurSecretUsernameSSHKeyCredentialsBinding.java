@@ -70,17 +70,17 @@ public class ConjurSecretUsernameSSHKeyCredentialsBinding extends MultiBinding<C
 
 		LOGGER.log(Level.FINE, "Start of bind()");
 
-		ConjurCredentialStore store = ConjurCredentialStore.getAllStores().get(String.valueOf(build.getParent().hashCode()));
+		ConjurCredentialStore store = ConjurCredentialStore.getAllStores()
+				.get(ConjurCredentialStore.registryKey(build.getParent()));
 		if (store != null) {
-			store.getProvider().getStore(build);
+			store.getProvider().getStore(build.getParent());
 		}
 
 		ConjurSecretUsernameSSHKeyCredentials conjurSecretCredential = getCredentials(build);
-		conjurSecretCredential.setContext(build);
 
 		Map<String, String> m = new HashMap<>();
 		String usernameValue = conjurSecretCredential.getUsername();
-		String secretValue = conjurSecretCredential.getPrivateKey();
+		String secretValue = conjurSecretCredential.getPrivateKey(ConjurSecretRequest.of(build));
 
 		m.put(usernameVariable, usernameValue);
 		m.put(secretVariable, secretValue);
@@ -5,6 +5,7 @@ import java.util.List;
 
 import org.conjur.jenkins.api.ConjurAPI;
 import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.exceptions.InvalidConjurSecretException;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
@@ -190,8 +191,29 @@ public class ConjurSecretUsernameSSHKeyCredentialsImpl extends BaseSSHUser
 	 */
 	@Override
 	public String getPrivateKey() {
-		final Secret secret = ConjurSecretCredentials.getSecretFromCredentialIDWithConfigAndContext(
-				this.getCredentialID(), this.conjurConfiguration, this.context, this.storeContext);
+		return privateKeyFor(this.conjurConfiguration, this.context);
+	}
+
+	/**
+	 * Return the PrivateKey for the request, the credential itself is not changed
+	 * @param request context and configuration to resolve the key for
+	 * @return the SSHKey secret
+	 */
+	@Override
+	public String getPrivateKey(final ConjurSecretRequest request) {
+		final ConjurConfiguration configuration = request.getConfiguration() != null ? request.getConfiguration()
+				: this.conjurConfiguration;
+		return privateKeyFor(configuration, request.getContext());
+	}
+
+	private String privateKeyFor(final ConjurConfiguration configuration, final ModelObject context) {
+		// resolved on each call, CredentialResolutionCache keeps the lookup per context
+		final Secret secret = LinkedCredential.resolve(this.getCredentialID(), configuration,
+				context != null ? context : this.storeContext).getSecret();
+		if (secret == null) {
+			throw new InvalidConjurSecretException("Conjur secret credential '" + this.getCredentialID()
+					+ "' used by SSH key credential '" + this.getId() + "' was not found");
+		}
 		return secret.getPlainText();
 	}
 
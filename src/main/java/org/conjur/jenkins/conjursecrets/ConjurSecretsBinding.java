@@ -0,0 +1,232 @@
+package org.conjur.jenkins.conjursecrets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.conjur.jenkins.credentials.ConjurCredentialProvider;
+import org.conjur.jenkins.credentials.ConjurCredentialStore;
+import org.jenkinsci.Symbol;
+import org.jenkinsci.plugins.credentialsbinding.BindingDescriptor;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+
+/**
+ * Binds several Conjur secrets in one step. All credentials are resolved up
+ * front, authenticating once per Conjur identity and fetching the secrets in
+ * batches, instead of one round trip per {@link ConjurSecretCredentialsBinding}.
+ */
+public class ConjurSecretsBinding extends MultiBinding<ConjurSecretCredentials> {
+
+	@Symbol("conjurSecrets")
+	@Extension
+	public static class DescriptorImpl extends BindingDescriptor<ConjurSecretCredentials> {
+
+		@Override
+		public String getDisplayName() {
+			return "Conjur Secrets (multiple)";
+		}
+
+		@Override
+		public boolean requiresWorkspace() {
+			return false;
+		}
+
+		@Override
+		protected Class<ConjurSecretCredentials> type() {
+			return ConjurSecretCredentials.class;
+		}
+	}
+
+	/**
+	 * A Conjur secret credential and the variable its value is bound to
+	 */
+	public static class SecretVariable extends AbstractDescribableImpl<SecretVariable> {
+
+		@Extension
+		public static class DescriptorImpl extends Descriptor<SecretVariable> {
+
+			@Override
+			public String getDisplayName() {
+				return "Conjur Secret";
+			}
+		}
+
+		private final String credentialsId;
+
+		private final String variable;
+
+		@DataBoundConstructor
+		public SecretVariable(String credentialsId, String variable) {
+			this.credentialsId = credentialsId;
+			this.variable = variable;
+		}
+
+		/** @return credentialsId */
+		public String getCredentialsId() {
+			return credentialsId;
+		}
+
+		/** @return variable */
+		public String getVariable() {
+			return variable;
+		}
+	}
+
+	private static final Logger LOGGER = Logger.getLogger(ConjurSecretsBinding.class.getName());
+
+	private final List<SecretVariable> secrets;
+
+	/**
+	 * {@link MultiBinding} holds the ID of a single credential, this binding
+	 * holds one per secret. {@link #getCredentialsId()} reports the ID of the
+	 * first secret, {@link #bind} resolves the IDs of all {@link #getSecrets()}.
+	 * 
+	 * @param secrets the secrets to bind, at least one
+	 */
+	@DataBoundConstructor
+	public ConjurSecretsBinding(List<SecretVariable> secrets) {
+		super(firstCredentialsId(secrets));
+		this.secrets = new ArrayList<SecretVariable>(secrets);
+	}
+
+	private static String firstCredentialsId(List<SecretVariable> secrets) {
+		if (secrets == null || secrets.isEmpty()) {
+			throw new IllegalArgumentException("At least one Conjur secret must be bound");
+		}
+		return secrets.get(0).getCredentialsId();
+	}
+
+	/** @return the secrets to bind */
+	public List<SecretVariable> getSecrets() {
+		return Collections.unmodifiableList(secrets);
+	}
+
+	/**
+	 * Bind method invoked on Jenkins build process
+	 */
+	@Override
+	public MultiEnvironment bind(Run<?, ?> build, FilePath workSpace, Launcher launcher, TaskListener listener)
+			throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		LOGGER.log(Level.FINE, "**** binding **** : " + build);
+		ConjurCredentialStore store = ConjurCredentialStore.getAllStores()
+				.get(ConjurCredentialStore.registryKey(build.getParent()));
+		if (store != null) {
+			LOGGER.log(Level.FINE, "Store details" + store);
+			store.getProvider().getStore(build.getParent());
+		}
+
+		// each secret is resolved on its own, even when several bind the same credential
+		Map<String, String> failures = new LinkedHashMap<String, String>();
+		Map<SecretVariable, ConjurSecretCredentials> credentials = new LinkedHashMap<SecretVariable, ConjurSecretCredentials>();
+		Map<SecretVariable, ConjurSecretRequest> requests = new HashMap<SecretVariable, ConjurSecretRequest>();
+		for (SecretVariable secret : secrets) {
+			try {
+				credentials.put(secret, credentialFor(build, secret, requests));
+			} catch (IOException e) {
+				failures.put(secret.getCredentialsId(), e.getMessage());
+			}
+		}
+
+		// plain Conjur secrets are fetched in batches, the composite credentials
+		// resolve their password through the credential they refer to
+		Map<SecretVariable, ConjurSecretCredentialsImpl> batched = new LinkedHashMap<SecretVariable, ConjurSecretCredentialsImpl>();
+		for (Map.Entry<SecretVariable, ConjurSecretCredentials> entry : credentials.entrySet()) {
+			if (entry.getValue() instanceof ConjurSecretCredentialsImpl) {
+				batched.put(entry.getKey(), (ConjurSecretCredentialsImpl) entry.getValue());
+			}
+		}
+		Map<SecretVariable, IOException> errors = new HashMap<SecretVariable, IOException>();
+		Map<SecretVariable, Secret> fetched = ConjurSecretCredentialsImpl.getSecrets(batched, requests, errors);
+
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		for (Map.Entry<SecretVariable, ConjurSecretCredentials> entry : credentials.entrySet()) {
+			String credentialsId = entry.getKey().getCredentialsId();
+			ConjurSecretCredentials credential = entry.getValue();
+			try {
+				Secret secret;
+				if (credential instanceof ConjurSecretCredentialsImpl) {
+					IOException error = errors.get(entry.getKey());
+					if (error != null) {
+						throw error;
+					}
+					secret = fetched.get(entry.getKey());
+				} else {
+					secret = credential.getSecret(requests.get(entry.getKey()));
+				}
+				values.put(entry.getKey().getVariable(), secret != null ? secret.getPlainText() : "");
+			} catch (IOException | RuntimeException e) {
+				failures.put(credentialsId, e.getMessage());
+			}
+		}
+
+		long execution = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		for (Map.Entry<String, String> failure : failures.entrySet()) {
+			listener.error("Failed to resolve Conjur secret '" + failure.getKey() + "': " + failure.getValue());
+		}
+		listener.getLogger().println("Resolved " + values.size() + " of " + secrets.size() + " Conjur secrets in "
+				+ execution + " ms");
+		if (!failures.isEmpty()) {
+			throw new AbortException("Could not resolve Conjur secrets " + failures.keySet());
+		}
+		return new MultiEnvironment(values);
+	}
+
+	private ConjurSecretCredentials credentialFor(Run<?, ?> build, SecretVariable secret,
+			Map<SecretVariable, ConjurSecretRequest> requests) throws IOException {
+		String credentialsId = secret.getCredentialsId();
+		ConjurSecretCredentials credential = ConjurCredentialProvider.findCredentialById(credentialsId,
+				ConjurSecretCredentials.class, build);
+		if (credential != null) {
+			CredentialsProvider.track(build, credential);
+			requests.put(secret, ConjurSecretRequest.of(build));
+			return credential;
+		}
+
+		String newCredentialId = credentialsId.replaceAll("([${}])", "");
+		credential = ConjurSecretCredentials.credentialWithID(newCredentialId, build.getParent());
+		if (credential == null) {
+			throw new AbortException("Could not find credentials entry with ID '" + credentialsId + "'");
+		}
+		CredentialsProvider.track(build, credential);
+		requests.put(secret, ConjurSecretRequest.of(build.getParent()));
+		return credential;
+	}
+
+	@Override
+	protected Class<ConjurSecretCredentials> type() {
+		return ConjurSecretCredentials.class;
+	}
+
+	@Override
+	public Set<String> variables() {
+		Set<String> variables = new LinkedHashSet<String>();
+		for (SecretVariable secret : secrets) {
+			variables.add(secret.getVariable());
+		}
+		return variables;
+	}
+
+}
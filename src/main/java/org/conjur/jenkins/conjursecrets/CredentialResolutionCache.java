@@ -0,0 +1,87 @@
+package org.conjur.jenkins.conjursecrets;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.ModelObject;
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+
+/**
+ * Remembers which credential an ID resolved to for a context, including IDs
+ * that resolved to nothing, so repeated lookups skip the walk up the folder
+ * hierarchy. Cleared whenever the credentials may have changed.
+ */
+public final class CredentialResolutionCache {
+
+	private static final Logger LOGGER = Logger.getLogger(CredentialResolutionCache.class.getName());
+
+	private static final String PROPERTY_PREFIX = CredentialResolutionCache.class.getName() + ".";
+
+	/** Maximum number of resolutions kept */
+	static final long MAX_ENTRIES = SystemProperties.getLong(PROPERTY_PREFIX + "maxEntries", 10000L);
+
+	/** Seconds a resolution is kept when nothing invalidates it earlier */
+	static final long TTL_SECONDS = SystemProperties.getLong(PROPERTY_PREFIX + "ttlSeconds", 120L);
+
+	private static final Cache<String, Optional<ConjurSecretCredentials>> resolutions = CacheBuilder.newBuilder()
+			.maximumSize(MAX_ENTRIES).expireAfterWrite(TTL_SECONDS, TimeUnit.SECONDS).build();
+
+	private CredentialResolutionCache() {
+	}
+
+	/**
+	 * Returns the cached resolution of the ID for the context, resolving it if
+	 * there is none
+	 *
+	 * @param credentialID credential ID
+	 * @param context      context the ID is resolved for
+	 * @param resolver     resolves the ID, may return null
+	 * @return the credential, or null if the ID resolves to nothing
+	 */
+	static ConjurSecretCredentials resolve(String credentialID, ModelObject context,
+			Supplier<ConjurSecretCredentials> resolver) {
+		String key = credentialID + "|" + contextKey(context);
+		try {
+			return resolutions.get(key, () -> Optional.ofNullable(resolver.get())).orElse(null);
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Forgets all resolutions, called when credentials, stores or items change
+	 */
+	public static void invalidateAll() {
+		LOGGER.log(Level.FINE, "Invalidating cached credential resolutions");
+		resolutions.invalidateAll();
+	}
+
+	private static String contextKey(ModelObject context) {
+		if (context instanceof Run) {
+			// builds of a job resolve alike
+			return "run:" + ((Run<?, ?>) context).getParent().getFullName();
+		}
+		if (context instanceof Item) {
+			return "item:" + ((Item) context).getFullName();
+		}
+		if (context instanceof ItemGroup) {
+			return "group:" + ((ItemGroup<?>) context).getFullName();
+		}
+		return context != null ? context.getClass().getName() + ":" + context.getDisplayName() : "";
+	}
+}
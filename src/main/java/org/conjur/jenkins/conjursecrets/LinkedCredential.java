@@ -0,0 +1,59 @@
+package org.conjur.jenkins.conjursecrets;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+
+import hudson.model.ModelObject;
+import hudson.util.Secret;
+
+/**
+ * The Conjur secret credential a username or SSH key credential refers to, as
+ * resolved for one context. Resolved on each access, the lookup itself is kept
+ * per context by {@link CredentialResolutionCache}, so the composite
+ * credentials hold no state shared between the builds using them.
+ */
+final class LinkedCredential {
+
+	private static final Logger LOGGER = Logger.getLogger(LinkedCredential.class.getName());
+
+	private final ConjurSecretCredentials credential;
+
+	private final ConjurSecretRequest request;
+
+	private LinkedCredential(ConjurSecretCredentials credential, ConjurSecretRequest request) {
+		this.credential = credential;
+		this.request = request;
+	}
+
+	/**
+	 * @param credentialID  ID of the Conjur secret credential referred to
+	 * @param configuration configuration of the composite credential, used when
+	 *                      the context has none
+	 * @param context       context the secret is resolved for
+	 * @return the credential referred to and the request for its secret
+	 */
+	static LinkedCredential resolve(String credentialID, ConjurConfiguration configuration, ModelObject context) {
+		LOGGER.log(Level.FINE, "Resolving linked credential {0} for {1}", new Object[] { credentialID, context });
+		ConjurSecretCredentials credential = ConjurSecretCredentials.credentialWithID(credentialID, context);
+		ConjurSecretRequest request = null;
+		if (credential != null) {
+			request = ConjurSecretRequest.of(context);
+			if (request.getConfiguration() == null) {
+				request = ConjurSecretRequest.of(context, configuration);
+			}
+		}
+		return new LinkedCredential(credential, request);
+	}
+
+	/** @return the linked credential, or null if the ID resolves to nothing */
+	ConjurSecretCredentials getCredential() {
+		return credential;
+	}
+
+	/** @return the secret of the linked credential, or null if there is none */
+	Secret getSecret() {
+		return credential != null ? credential.getSecret(request) : null;
+	}
+}
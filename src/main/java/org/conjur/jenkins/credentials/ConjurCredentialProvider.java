@@ -1,39 +1,51 @@
 package org.conjur.jenkins.credentials;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.acegisecurity.Authentication;
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
 import org.conjur.jenkins.configuration.GlobalConjurConfiguration;
 import org.conjur.jenkins.conjursecrets.ConjurSecretCredentials;
+import org.conjur.jenkins.conjursecrets.ConjurSecretCredentialsImpl;
 import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentials;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentialsImpl;
 import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameSSHKeyCredentials;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameSSHKeyCredentialsImpl;
+import org.conjur.jenkins.conjursecrets.CredentialResolutionCache;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 
 import com.cloudbees.plugins.credentials.Credentials;
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.common.CertificateCredentials;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.google.common.cache.Cache;
 
 import hudson.Extension;
+import hudson.ExtensionList;
 import hudson.model.Item;
 import hudson.model.ItemGroup;
 import hudson.model.ModelObject;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
 import hudson.security.ACL;
 import jenkins.model.GlobalConfiguration;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 
 /**
  * Provides the ConjurCredentails extends CredentialProvider
@@ -43,9 +55,51 @@ public class ConjurCredentialProvider extends CredentialsProvider {
 
 	private static final Logger LOGGER = Logger.getLogger(ConjurCredentialProvider.class.getName());
 
-	private static final ConcurrentHashMap<String, Supplier<Collection<StandardCredentials>>> allCredentialSuppliers = new ConcurrentHashMap<String, Supplier<Collection<StandardCredentials>>>();
+	/** How long the credentials listed from Conjur are kept when the configuration does not set it */
+	static final long DEFAULT_STORE_TTL_SECONDS = SystemProperties
+			.getLong(ConjurCredentialProvider.class.getName() + ".storeTtlSeconds", 120L);
 
-	private Supplier<Collection<StandardCredentials>> currentCredentialSupplier;
+	/** Credential classes created from the Conjur listing */
+	private static final List<Class<? extends StandardCredentials>> PROVIDED_TYPES = Arrays.asList(
+			ConjurSecretCredentialsImpl.class, ConjurSecretUsernameCredentialsImpl.class,
+			ConjurSecretUsernameSSHKeyCredentialsImpl.class);
+
+	/** {@link #isSupportedType(Class)} decided once per class */
+	private static final ClassValue<Boolean> SUPPORTED_TYPES = new ClassValue<Boolean>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			return isSupportedType(type);
+		}
+	};
+
+	/** Set while a lookup asks the other credential providers only */
+	private static final ThreadLocal<Boolean> skipConjurLookups = new ThreadLocal<Boolean>();
+
+	private static final Cache<String, Supplier<Collection<StandardCredentials>>> allCredentialSuppliers = ConjurCredentialStore
+			.newRegistry();
+
+	/**
+	 * Drops the stores and credential suppliers of deleted and renamed items
+	 */
+	@Extension
+	public static class RegistryItemListener extends ItemListener {
+
+		@Override
+		public void onDeleted(Item item) {
+			evict(item.getFullName());
+		}
+
+		@Override
+		public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+			evict(oldFullName);
+		}
+
+		private static void evict(String fullName) {
+			LOGGER.log(Level.FINE, "Evicting Conjur credential stores of {0}", fullName);
+			ConjurCredentialStore.evict(fullName, ConjurCredentialStore.getAllStores(), getAllCredentialSuppliers());
+			CredentialResolutionCache.invalidateAll();
+		}
+	}
 
 	/**
 	 * Returns the Credentials as List based on the type,itemGroup and
@@ -90,41 +144,64 @@ public class ConjurCredentialProvider extends CredentialsProvider {
 
 	private <C extends Credentials> List<C> getCredentialsFromSupplier(@Nonnull Class<C> type, ModelObject context,
 			Authentication authentication) {
+		if (!SUPPORTED_TYPES.get(type)) {
+			// lookups of unrelated credential types never reach Conjur
+			return Collections.emptyList();
+		}
+		if (skipConjurLookups.get() != null) {
+			return Collections.emptyList();
+		}
 		LOGGER.log(Level.FINE, "Type: " + type.getName() + " authentication: " + authentication + " context: "
 				+ context.getDisplayName());
 
-		if (!type.isInstance(CertificateCredentials.class)
-				&& ((type.isInstance(ConjurSecretCredentials.class) || type == ConjurSecretUsernameCredentials.class)
+		if (ACL.SYSTEM.equals(authentication)) {
+			Collection<StandardCredentials> allCredentials = Collections.emptyList();
+			LOGGER.log(Level.FINE, "**** getCredentials ConjurCredentialProvider: " + this.getId() + " : "
+					+ ACL.SYSTEM + " Context Name :" + context.getClass().getName());
+			LOGGER.log(Level.FINE, "Call to get the Store details");
+			try{
+			// resolved per call, concurrent lookups for other contexts do not interfere
+			Supplier<Collection<StandardCredentials>> supplier = getCredentialSupplier(context);
+			if (supplier != null) {
+				LOGGER.log(Level.FINE, "Iniside current credentialsupplier>>>>" + supplier);
+				allCredentials = supplier.get();
+				if (allCredentials == null) {
+					LOGGER.log(Level.WARNING, "Credentials supplier returned null. Returning empty list.");
+					return Collections.emptyList();
+				}
+				// the snapshot is indexed by type, the list is shared and unmodifiable
+				return CredentialsSnapshot.of(allCredentials).ofType(type);
+			}
+			}catch (Exception ex){
+				LOGGER.log(Level.SEVERE, "getCredentialsFromSupplier()>> Error retrieving credentials: " + ex.getMessage());
+			}
+		}
+		LOGGER.log(Level.FINE, "**** End of getCredentialsFromSupplier(): " + Collections.emptyList());
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Whether the provider answers lookups of a credential type: the type must
+	 * be one the provider serves, and one of the credential classes listed from
+	 * Conjur must implement it.
+	 * 
+	 * @param type requested credential type
+	 * @return true if the lookup may return Conjur credentials
+	 */
+	static boolean isSupportedType(Class<?> type) {
+		if (CertificateCredentials.class.isAssignableFrom(type)
+				|| !(type == ConjurSecretUsernameCredentials.class
 						|| type.isAssignableFrom(ConjurSecretCredentials.class)
 						|| type.isAssignableFrom(ConjurSecretUsernameSSHKeyCredentials.class)
 						|| type.isAssignableFrom(StringCredentials.class))) {
-
-			LOGGER.log(Level.FINE, "*****");
-			if (ACL.SYSTEM.equals(authentication)) {
-				Collection<StandardCredentials> allCredentials = Collections.emptyList();
-				LOGGER.log(Level.FINE, "**** getCredentials ConjurCredentialProvider: " + this.getId() + " : "
-						+ ACL.SYSTEM + " Context Name :" + context.getClass().getName());
-				LOGGER.log(Level.FINE, "Call to get the Store details");
-				try{
-				getStore(context);
-				if (currentCredentialSupplier != null) {
-					LOGGER.log(Level.FINE, "Iniside current credentialsupplier>>>>" + currentCredentialSupplier);
-					allCredentials = currentCredentialSupplier.get();
-					if (allCredentials == null) {
-						LOGGER.log(Level.WARNING, "Credentials supplier returned null. Returning empty list.");
-						return Collections.emptyList();
-					}
-					return allCredentials.stream().filter(c -> type.isAssignableFrom(c.getClass())).map(type::cast)
-							.collect(Collectors.toList());
-				}
-				}catch (Exception ex){
-					LOGGER.log(Level.SEVERE, "getCredentialsFromSupplier()>> Error retrieving credentials: " + ex.getMessage());
-				}
+			return false;
+		}
+		for (Class<?> provided : PROVIDED_TYPES) {
+			if (type.isAssignableFrom(provided)) {
+				return true;
 			}
-			LOGGER.log(Level.FINE, "**** End of getCredentialsFromSupplier(): " + Collections.emptyList());
-
 		}
-		return Collections.emptyList();
+		return false;
 	}
 
 	/**
@@ -134,51 +211,141 @@ public class ConjurCredentialProvider extends CredentialsProvider {
 	 */
 	@Override
 	public ConjurCredentialStore getStore(ModelObject object) {
-		GlobalConjurConfiguration globalConfig = GlobalConfiguration.all().get(GlobalConjurConfiguration.class);
+		ModelObject context = storeContext(object);
 		ConjurCredentialStore store = null;
-		Supplier<Collection<StandardCredentials>> supplier = null;
 
-		if (globalConfig == null || !globalConfig.getEnableJWKS()
-				|| !globalConfig.getEnableContextAwareCredentialStore()) {
-			LOGGER.log(Level.FINE, "No Conjur Credential Store (Content Aware)");
-			return null;
+		if (context != null) {
+			String key = ConjurCredentialStore.registryKey(context);
+			LOGGER.log(Level.FINE, "Object Key not null" + context.getDisplayName() + "Key" + key);
+
+			try {
+				store = ConjurCredentialStore.getAllStores().computeIfAbsent(key,
+						k -> new ConjurCredentialStore(this, context));
+				LOGGER.log(Level.FINEST, "All Store detaials" + store);
+			} catch (Exception ex) {
+				LOGGER.log(Level.FINE, ex.getMessage());
+			}
 		}
 
-		if (object == Jenkins.get()) {
-			LOGGER.log(Level.FINE, "jenkins get object" + object.getDisplayName() + Jenkins.get().getDescription());
+		return store;
+	}
+
+	/**
+	 * Finds the credential with the ID for a build like
+	 * {@link CredentialsProvider#findCredentialById}. The other credential
+	 * providers are asked first, then the Conjur store of the job resolves the ID
+	 * without listing all resources when it can.
+	 * 
+	 * @param <C>   credential type
+	 * @param id    credential ID
+	 * @param type  credential type
+	 * @param build the build using the credential
+	 * @return the credential, or null if none has the ID
+	 */
+	public static <C extends IdCredentials> C findCredentialById(String id, Class<C> type, Run<?, ?> build) {
+		if (id.contains("$")) {
+			// parameter expressions are expanded by the credentials plugin
+			return CredentialsProvider.findCredentialById(id, type, build);
+		}
+		C credential;
+		skipConjurLookups.set(Boolean.TRUE);
+		try {
+			credential = CredentialsProvider.findCredentialById(id, type, build);
+		} finally {
+			skipConjurLookups.remove();
+		}
+		if (credential != null) {
+			return credential;
+		}
+		StandardCredentials conjur = ExtensionList.lookupSingleton(ConjurCredentialProvider.class)
+				.getCredentialById(id, build.getParent());
+		if (type.isInstance(conjur)) {
+			// CredentialsProvider.findCredentialById tracks the credentials it finds
+			CredentialsProvider.track(build, conjur);
+			return type.cast(conjur);
+		}
+		return CredentialsProvider.findCredentialById(id, type, build);
+	}
+
+	/**
+	 * Resolves a credential of the Conjur store of the context by ID, from the
+	 * current listing of the store or else from the single variable the ID
+	 * derives from. Resolutions without a listing are remembered per store.
+	 * 
+	 * @param id      credential ID
+	 * @param context item, folder or build
+	 * @return the credential, or null if it cannot be resolved without a listing
+	 */
+	public StandardCredentials getCredentialById(String id, ModelObject context) {
+		ModelObject storeContext = storeContext(context);
+		Supplier<Collection<StandardCredentials>> supplier = getCredentialSupplier(storeContext);
+		if (supplier == null) {
+			return null;
+		}
+		Collection<StandardCredentials> current = CustomSuppliers.peek(supplier);
+		if (current != null) {
+			// the loaded listing holds every credential of the store, no need to probe
+			return CredentialsSnapshot.of(current).getById(id);
+		}
+		try {
+			return CredentialsSupplier.resolveCached(id, storeContext);
+		} catch (IOException | RuntimeException e) {
+			LOGGER.log(Level.FINE, "Resolving {0} from Conjur failed: {1}", new Object[] { id, e.getMessage() });
 			return null;
+		}
+	}
 
+	/**
+	 * Returns the supplier of the Conjur credentials for the context, registering
+	 * the store of the context if needed
+	 * 
+	 * @param object item, folder or build
+	 * @return the credential supplier, or null if the context has no Conjur store
+	 */
+	Supplier<Collection<StandardCredentials>> getCredentialSupplier(ModelObject object) {
+		ModelObject context = storeContext(object);
+		if (context == null) {
+			return null;
 		}
+		String key = ConjurCredentialStore.registryKey(context);
+		// the two registries evict independently, either entry is recreated when missing
+		ConjurCredentialStore.getAllStores().computeIfAbsent(key, k -> new ConjurCredentialStore(this, context));
+		return getAllCredentialSuppliers().computeIfAbsent(key, k -> createCredentialSupplier(context));
+	}
 
-		if (object != null) {
+	/**
+	 * @param context item or folder of the store
+	 * @return a new supplier of the credentials listed for the context
+	 */
+	Supplier<Collection<StandardCredentials>> createCredentialSupplier(ModelObject context) {
+		return newCredentialSupplier(context);
+	}
 
-			String key = String.valueOf(object.hashCode());
-			LOGGER.log(Level.FINE, "Object Key not null" + object.getDisplayName() + "Key" + key);
+	/**
+	 * @param object item, folder or build
+	 * @return the context the store belongs to, or null if there is no Conjur
+	 *         store for the object
+	 */
+	ModelObject storeContext(ModelObject object) {
+		GlobalConjurConfiguration globalConfig = GlobalConfiguration.all().get(GlobalConjurConfiguration.class);
 
-			try {
-				if (ConjurCredentialStore.getAllStores().containsKey(key)) {
-					LOGGER.log(Level.FINEST, "GetStore EXISTING ConjurCredentialProvider : "
-							+ object.getClass().getName() + ": " + object.toString() + " => " + object.hashCode());
-					store = ConjurCredentialStore.getAllStores().get(key);
-					LOGGER.log(Level.FINEST, "All Store detaials" + store);
-
-				} else {
-
-					store = new ConjurCredentialStore(this, object);
-					supplier = memoizeWithExpiration(CredentialsSupplier.standard(object), Duration.ofSeconds(120));
-					ConjurCredentialStore.getAllStores().put(key, store);
-					allCredentialSuppliers.put(key, supplier);
-				}
-				LOGGER.log(Level.FINE, "currentCredentialSupplier" + key);
+		if (globalConfig == null || !globalConfig.getEnableJWKS()
+				|| !globalConfig.getEnableContextAwareCredentialStore()) {
+			LOGGER.log(Level.FINE, "No Conjur Credential Store (Content Aware)");
+			return null;
+		}
 
-				currentCredentialSupplier = allCredentialSuppliers.get(key);
+		if (object instanceof Run) {
+			// builds share the store of their job, a store per build would never be reused
+			object = ((Run<?, ?>) object).getParent();
+		}
 
-			} catch (Exception ex) {
-				LOGGER.log(Level.FINE, ex.getMessage());
-			}
+		if (object == Jenkins.get()) {
+			LOGGER.log(Level.FINE, "jenkins get object" + object.getDisplayName() + Jenkins.get().getDescription());
+			return null;
 		}
 
-		return store;
+		return object;
 	}
 
 	/**
@@ -187,7 +354,31 @@ public class ConjurCredentialProvider extends CredentialsProvider {
 	 */
 
 	public static ConcurrentMap<String, Supplier<Collection<StandardCredentials>>> getAllCredentialSuppliers() {
-		return allCredentialSuppliers;
+		return allCredentialSuppliers.asMap();
+	}
+
+	/**
+	 * Supplier of the credentials listed from Conjur for the context. The listing
+	 * is refreshed in the background ahead of the TTL of the Conjur configuration
+	 * of the context.
+	 * 
+	 * @param context item or folder the credentials are listed for
+	 * @return the memoizing supplier
+	 */
+	public static Supplier<Collection<StandardCredentials>> newCredentialSupplier(ModelObject context) {
+		// once no stale listing is left, failed listings list no credentials
+		return CustomSuppliers.refreshAhead(CredentialsSupplier.standard(context), () -> getStoreTtl(context),
+				CredentialsSnapshot.of(null));
+	}
+
+	/**
+	 * @param context item or folder
+	 * @return how long the credentials listed for the context are kept
+	 */
+	public static Duration getStoreTtl(ModelObject context) {
+		ConjurConfiguration configuration = ConjurAPI.getConfigurationFromContext(context, null);
+		Long ttl = configuration != null ? configuration.getCredentialStoreTtlSeconds() : null;
+		return Duration.ofSeconds(ttl != null && ttl > 0 ? ttl : DEFAULT_STORE_TTL_SECONDS);
 	}
 
 	/**
@@ -205,7 +396,10 @@ public class ConjurCredentialProvider extends CredentialsProvider {
 	 * @param base
 	 * @param duration
 	 * @return
+	 * @deprecated use {@link #newCredentialSupplier(ModelObject)}, which refreshes
+	 *             the credentials ahead of their expiry
 	 */
+	@Deprecated
 	public static <T> Supplier<T> memoizeWithExpiration(Supplier<T> base, Duration duration) {
 		return CustomSuppliers.memoizeWithExpiration(base, duration);
 	}
@@ -2,8 +2,8 @@ package org.conjur.jenkins.credentials;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,6 +11,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.acegisecurity.Authentication;
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
 import org.jenkins.ui.icon.Icon;
 import org.jenkins.ui.icon.IconSet;
 import org.jenkins.ui.icon.IconType;
@@ -22,12 +24,18 @@ import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsStore;
 import com.cloudbees.plugins.credentials.CredentialsStoreAction;
 import com.cloudbees.plugins.credentials.domains.Domain;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import hudson.model.Item;
+import hudson.model.ItemGroup;
 import hudson.model.ModelObject;
+import hudson.model.Run;
 import hudson.security.ACL;
 import hudson.security.Permission;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 
 /**
  * Retrieve the Credential Store details for Conjur Configuration
@@ -36,7 +44,20 @@ import jenkins.model.Jenkins;
 public class ConjurCredentialStore extends CredentialsStore {
 
 	private static final Logger LOGGER = Logger.getLogger(ConjurCredentialStore.class.getName());
-	private static ConcurrentHashMap<String, ConjurCredentialStore> allStores = new ConcurrentHashMap<String, ConjurCredentialStore>();
+
+	/** Maximum number of items a store and credential supplier are kept for */
+	static final long MAX_REGISTRY_ENTRIES = SystemProperties
+			.getLong(ConjurCredentialStore.class.getName() + ".maxEntries", 1000L);
+
+	/** Minutes after which a store that was not used is dropped */
+	static final long REGISTRY_IDLE_MINUTES = SystemProperties
+			.getLong(ConjurCredentialStore.class.getName() + ".idleMinutes", 60L);
+
+	private static final Cache<String, ConjurCredentialStore> allStores = newRegistry();
+
+	/** Registry key of each item full name, bounded like the registries and dropped when configurations change */
+	private static final Cache<String, String> registryKeys = newRegistry();
+
 	private final ConjurCredentialProvider provider;
 	private final ModelObject context;
 	private final ConjurCredentialStoreAction action;
@@ -49,7 +70,96 @@ public class ConjurCredentialStore extends CredentialsStore {
 	}
 
 	public static ConcurrentMap<String, ConjurCredentialStore> getAllStores() {
-		return allStores;
+		return allStores.asMap();
+	}
+
+	/**
+	 * Key under which the store and credential supplier of a context are
+	 * registered: the full name of the item plus the Conjur configuration it
+	 * resolves to, so a configuration change gets a fresh entry. Keys of items
+	 * are cached until {@link #invalidateRegistryKeys()}.
+	 * 
+	 * @param context item, folder or build
+	 * @return the registry key
+	 */
+	public static String registryKey(ModelObject context) {
+		if (context instanceof Run) {
+			context = ((Run<?, ?>) context).getParent();
+		}
+		if (context instanceof Item) {
+			return cachedKey(((Item) context).getFullName(), context);
+		} else if (context instanceof ItemGroup) {
+			return cachedKey(((ItemGroup<?>) context).getFullName(), context);
+		}
+		return issue(context.getDisplayName(), context);
+	}
+
+	private static String cachedKey(String name, ModelObject context) {
+		String key = registryKeys.getIfPresent(name);
+		if (key == null) {
+			// not computed in the cache, resolving the configuration may take a while
+			key = issue(name, context);
+			registryKeys.put(name, key);
+		}
+		return key;
+	}
+
+	private static String issue(String name, ModelObject context) {
+		ConjurConfiguration configuration = ConjurAPI.getConfigurationFromContext(context, null);
+		if (configuration == null) {
+			return name + "|";
+		}
+		return name + "|" + configuration.getApplianceURL() + "|" + configuration.getAccount() + "|"
+				+ configuration.getCredentialID() + "|" + configuration.getCertificateCredentialID();
+	}
+
+	/**
+	 * Forgets the cached registry keys, so they are derived again from the
+	 * current configurations
+	 */
+	public static void invalidateRegistryKeys() {
+		registryKeys.invalidateAll();
+	}
+
+	/**
+	 * Forgets the cached registry keys of an item and of the items below it
+	 * 
+	 * @param fullName full name of the item
+	 */
+	public static void invalidateRegistryKeys(String fullName) {
+		String childPrefix = fullName + "/";
+		registryKeys.asMap().keySet().removeIf(name -> name.equals(fullName) || name.startsWith(childPrefix));
+	}
+
+	/**
+	 * Drops the entries of an item and of the items below it from the registries,
+	 * including entries registered under keys of former configurations. The
+	 * registries are bounded, so their keys are scanned rather than indexed.
+	 * 
+	 * @param fullName   full name of the item
+	 * @param registries registries keyed by {@link #registryKey(ModelObject)}
+	 */
+	@SafeVarargs
+	static void evict(String fullName, ConcurrentMap<String, ?>... registries) {
+		String itemPrefix = fullName + "|";
+		String childPrefix = fullName + "/";
+		for (ConcurrentMap<String, ?> registry : registries) {
+			registry.keySet().removeIf(key -> key.startsWith(itemPrefix) || key.startsWith(childPrefix));
+		}
+		invalidateRegistryKeys(fullName);
+	}
+
+	/**
+	 * @param <V> type of the registered values
+	 * @return an empty registry bounded in size and dropping idle entries
+	 */
+	static <V> Cache<String, V> newRegistry() {
+		return newRegistry(MAX_REGISTRY_ENTRIES, REGISTRY_IDLE_MINUTES, Ticker.systemTicker());
+	}
+
+	static <V> Cache<String, V> newRegistry(long maxEntries, long idleMinutes, Ticker ticker) {
+		return CacheBuilder.newBuilder().maximumSize(maxEntries).expireAfterAccess(idleMinutes, TimeUnit.MINUTES)
+				.ticker(ticker).<String, V>build();
 	}
 
 	/**
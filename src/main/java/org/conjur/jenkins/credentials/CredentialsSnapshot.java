@@ -0,0 +1,143 @@
+package org.conjur.jenkins.credentials;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+
+/**
+ * Immutable result of one listing of the Conjur credentials, indexed by every
+ * class and interface the credentials implement and by ID, so lookups return
+ * shared lists without filtering or copying.
+ */
+public final class CredentialsSnapshot extends AbstractCollection<StandardCredentials> {
+
+	private static final CredentialsSnapshot EMPTY = new CredentialsSnapshot(Collections.emptyList(), 0, 0, 0);
+
+	private final List<StandardCredentials> all;
+
+	private final Map<Class<?>, List<StandardCredentials>> byType;
+
+	private final Map<String, StandardCredentials> byId;
+
+	private final int added;
+
+	private final int changed;
+
+	private final int removed;
+
+	private CredentialsSnapshot(Collection<? extends StandardCredentials> credentials, int added, int changed,
+			int removed) {
+		this.added = added;
+		this.changed = changed;
+		this.removed = removed;
+		this.all = Collections.unmodifiableList(new ArrayList<StandardCredentials>(credentials));
+		Map<Class<?>, List<StandardCredentials>> types = new HashMap<Class<?>, List<StandardCredentials>>();
+		Map<String, StandardCredentials> ids = new LinkedHashMap<String, StandardCredentials>();
+		for (StandardCredentials credential : all) {
+			for (Class<?> type : typesOf(credential.getClass())) {
+				types.computeIfAbsent(type, t -> new ArrayList<StandardCredentials>()).add(credential);
+			}
+			ids.putIfAbsent(credential.getId(), credential);
+		}
+		for (Map.Entry<Class<?>, List<StandardCredentials>> entry : types.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		this.byType = types;
+		this.byId = Collections.unmodifiableMap(ids);
+	}
+
+	/**
+	 * @param credentials the listed credentials
+	 * @return snapshot of the credentials
+	 */
+	public static CredentialsSnapshot of(Collection<? extends StandardCredentials> credentials) {
+		if (credentials instanceof CredentialsSnapshot) {
+			return (CredentialsSnapshot) credentials;
+		}
+		return credentials == null || credentials.isEmpty() ? EMPTY
+				: new CredentialsSnapshot(credentials, credentials.size(), 0, 0);
+	}
+
+	/**
+	 * @param credentials the listed credentials
+	 * @param added       credentials not in the previous listing
+	 * @param changed     credentials replaced since the previous listing
+	 * @param removed     credentials of the previous listing no longer listed
+	 * @return snapshot of a refreshed listing
+	 */
+	public static CredentialsSnapshot refreshed(Collection<? extends StandardCredentials> credentials, int added,
+			int changed, int removed) {
+		return new CredentialsSnapshot(credentials, added, changed, removed);
+	}
+
+	/**
+	 * @param <C>  credential type
+	 * @param type class or interface the credentials implement
+	 * @return unmodifiable list of the credentials of the type
+	 */
+	@SuppressWarnings("unchecked")
+	public <C> List<C> ofType(Class<C> type) {
+		List<StandardCredentials> credentials = byType.get(type);
+		return credentials != null ? (List<C>) credentials : Collections.<C>emptyList();
+	}
+
+	/**
+	 * @param id credential ID
+	 * @return the credential with the ID, or null
+	 */
+	public StandardCredentials getById(String id) {
+		return byId.get(id);
+	}
+
+	/** @return number of credentials added by the refresh */
+	public int getAdded() {
+		return added;
+	}
+
+	/** @return number of credentials replaced by the refresh */
+	public int getChanged() {
+		return changed;
+	}
+
+	/** @return number of credentials removed by the refresh */
+	public int getRemoved() {
+		return removed;
+	}
+
+	@Override
+	public Iterator<StandardCredentials> iterator() {
+		return all.iterator();
+	}
+
+	@Override
+	public int size() {
+		return all.size();
+	}
+
+	private static Set<Class<?>> typesOf(Class<?> type) {
+		Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			types.add(c);
+			addInterfaces(c, types);
+		}
+		return types;
+	}
+
+	private static void addInterfaces(Class<?> type, Set<Class<?>> types) {
+		for (Class<?> i : type.getInterfaces()) {
+			if (types.add(i)) {
+				addInterfaces(i, types);
+			}
+		}
+	}
+}
@@ -1,31 +1,42 @@
 package org.conjur.jenkins.credentials;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
+import org.apache.commons.lang.StringUtils;
+import org.conjur.jenkins.api.AccessTokenCache;
 import org.conjur.jenkins.api.ConjurAPI;
 import org.conjur.jenkins.api.ConjurAPIUtils;
+import org.conjur.jenkins.api.SingleFlight;
 import org.conjur.jenkins.configuration.ConjurConfiguration;
-import org.conjur.jenkins.conjursecrets.ConjurSecretCredentials;
 import org.conjur.jenkins.conjursecrets.ConjurSecretCredentialsImpl;
-import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentials;
 import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentialsImpl;
-import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameSSHKeyCredentials;
 import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameSSHKeyCredentialsImpl;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import org.conjur.jenkins.conjursecrets.CredentialResolutionCache;
 
 import com.cloudbees.plugins.credentials.CredentialsProvider;
 import com.cloudbees.plugins.credentials.CredentialsScope;
 import com.cloudbees.plugins.credentials.common.StandardCredentials;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import hudson.model.AbstractItem;
@@ -34,9 +45,8 @@ import hudson.model.ItemGroup;
 import hudson.model.ModelObject;
 import hudson.security.ACL;
 import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
 
 /**
  * Retrieves the Credentail Supplier for context
@@ -46,8 +56,49 @@ public class CredentialsSupplier implements Supplier<Collection<StandardCredenti
 
 	private static final Logger LOGGER = Logger.getLogger(CredentialsSupplier.class.getName());
 
+	/**
+	 * Listings shared by the stores authenticating as the same Conjur identity,
+	 * folders inheriting one configuration list the resources once
+	 */
+	private static final Cache<String, SharedListing> sharedListings = CacheBuilder.newBuilder()
+			.maximumSize(ConjurCredentialStore.MAX_REGISTRY_ENTRIES)
+			.expireAfterWrite(ConjurCredentialProvider.DEFAULT_STORE_TTL_SECONDS, TimeUnit.SECONDS).build();
+
+	private static final SingleFlight<String, SharedListing> listings = new SingleFlight<String, SharedListing>();
+
+	/** Maximum number of credential IDs resolved without a listing that are kept */
+	static final long MAX_RESOLVED_IDS = SystemProperties
+			.getLong(CredentialsSupplier.class.getName() + ".maxResolvedIds", 10000L);
+
+	/** Credentials resolved by ID per store while its listing is not loaded, misses included */
+	private static final Cache<String, Optional<StandardCredentials>> resolvedIds = CacheBuilder.newBuilder()
+			.maximumSize(MAX_RESOLVED_IDS)
+			.expireAfterWrite(ConjurCredentialProvider.DEFAULT_STORE_TTL_SECONDS, TimeUnit.SECONDS).build();
+
+	private static final class SharedListing {
+		final List<ConjurAPI.ConjurVariable> variables;
+		final long loadedAtNanos;
+
+		SharedListing(List<ConjurAPI.ConjurVariable> variables, long loadedAtNanos) {
+			this.variables = Collections.unmodifiableList(variables);
+			this.loadedAtNanos = loadedAtNanos;
+		}
+	}
+
 	private ModelObject context;
 
+	/** Listing of the previous refresh, its unchanged credentials are reused */
+	private volatile CredentialsSnapshot previous = CredentialsSnapshot.of(null);
+
+	/**
+	 * Differences of a listing to the previous one
+	 */
+	private static final class ListingDiff {
+		final Set<String> ids = new HashSet<String>();
+		int added;
+		int changed;
+	}
+
 	private CredentialsSupplier(ModelObject context) {
 		super();
 		this.context = context;
@@ -128,7 +179,6 @@ public class CredentialsSupplier implements Supplier<Collection<StandardCredenti
 			}
 		}*/
 
-		String result = "";
 		try {
 			ConjurConfiguration conjurConfiguration = ConjurAPI.getConfigurationFromContext(getContext(), null);
 			// Get Http Client
@@ -136,93 +186,294 @@ public class CredentialsSupplier implements Supplier<Collection<StandardCredenti
 			// Authenticate to Conjur
 			String authToken = ConjurAPI.getAuthorizationToken(client, conjurConfiguration, getContext());
 
-			ConjurAPI.ConjurAuthnInfo conjurAuthn = ConjurAPI.getConjurAuthnInfo(conjurConfiguration, null,
-					getContext());
-
-			LOGGER.log(Level.FINE, "Fetching variables from Conjur");
-			Request request = new Request.Builder()
-					.url(String.format("%s/resources/%s?kind=variable&limit=1000", conjurAuthn.applianceUrl,
-							conjurAuthn.account))
-					.get().addHeader("Authorization", "Token token=\"" + authToken + "\"").build();
-
-			Response response = client.newCall(request).execute();
-			result = response.body().string();
-			LOGGER.log(Level.FINEST, "RESULT => " + result);
-			if (response.code() != 200) {
-				LOGGER.log(Level.FINE, "Error fetching variables from Conjur [" + response.code() + " - "
-						+ response.message() + "\n" + result);
-				throw new IOException("Error fetching variables from Conjur [" + response.code() + " - "
-						+ response.message() + "\n" + result);
-			}
-
-			JSONArray resultResources = new JSONArray(result);
-			for (int i = 0; i < resultResources.length(); i++) {
-				JSONObject resource = resultResources.getJSONObject(i);
-				LOGGER.log(Level.FINEST, "resource => {0}", resource.toString(4));
-
-				String variablePath = resource.getString("id").split(":")[2];
-				JSONArray annotations = resource.getJSONArray("annotations");
-				String userName = null;
-				String credentialType = null;
-				for (int j = 0; j < annotations.length(); j++) {
-					JSONObject annotation = annotations.getJSONObject(j);
-					switch (annotation.getString("name").toLowerCase()) {
-					case "jenkins_credential_username":
-						userName = annotation.getString("value");
-						break;
-					case "jenkins_credential_type":
-						credentialType = annotation.getString("value").toLowerCase();
-						break;
-					default:
-						break;
-					}
-				}
-
-				if (credentialType == null) {
-					if (userName == null) {
-						credentialType = "credential";
-					} else {
-						credentialType = "usernamecredential";
-					}
-				}
+			ListingDiff diff = new ListingDiff();
+			for (ConjurAPI.ConjurVariable variable : listVariables(client, conjurConfiguration, authToken)) {
+				String variablePath = variable.variablePath;
+				String userName = variable.userName;
+				String credentialType = credentialTypeOf(variable);
 
-				ConjurSecretCredentials credential = (ConjurSecretCredentials) new ConjurSecretCredentialsImpl(
-						CredentialsScope.GLOBAL, variablePath.replace("/", "-"), variablePath,
-						"CyberArk Conjur Provided");
-				credential.setStoreContext(getContext());
-				allCredentials.add(credential);
+				String credentialID = variablePath.replace("/", "-");
+				allCredentials.add(reuseOrCreate(ConjurSecretCredentialsImpl.class, credentialID, diff,
+						existing -> variablePath.equals(existing.getVariablePath()), () -> {
+							ConjurSecretCredentialsImpl credential = new ConjurSecretCredentialsImpl(
+									CredentialsScope.GLOBAL, credentialID, variablePath, "CyberArk Conjur Provided");
+							credential.setStoreContext(getContext());
+							return credential;
+						}));
 				switch (credentialType) {
 				case "usernamecredential":
-					ConjurSecretUsernameCredentials usernameCredential = (ConjurSecretUsernameCredentials) new ConjurSecretUsernameCredentialsImpl(
-							CredentialsScope.GLOBAL, "username-" + variablePath.replace("/", "-"), userName,
-							variablePath.replace("/", "-"), conjurConfiguration, "CyberArk Conjur Provided");
-					usernameCredential.setStoreContext(getContext());
-					allCredentials.add(usernameCredential);
+					allCredentials.add(reuseOrCreate(ConjurSecretUsernameCredentialsImpl.class,
+							"username-" + credentialID, diff,
+							existing -> Objects.equals(userName, existing.getUsername())
+									&& credentialID.equals(existing.getCredentialID())
+									&& sameConfiguration(conjurConfiguration, existing.getConjurConfiguration()),
+							() -> {
+								ConjurSecretUsernameCredentialsImpl usernameCredential = new ConjurSecretUsernameCredentialsImpl(
+										CredentialsScope.GLOBAL, "username-" + credentialID, userName, credentialID,
+										conjurConfiguration, "CyberArk Conjur Provided");
+								usernameCredential.setStoreContext(getContext());
+								return usernameCredential;
+							}));
 					break;
 				case "usernamesshkeycredential":
-					ConjurSecretUsernameSSHKeyCredentials usernameSSHKeyCredential = (ConjurSecretUsernameSSHKeyCredentials) new ConjurSecretUsernameSSHKeyCredentialsImpl(
-							CredentialsScope.GLOBAL, "usernamesshkey-" + variablePath.replace("/", "-"), userName,
-							variablePath.replace("/", "-"), conjurConfiguration, null /* no passphrase yet */,
-							"CyberArk Conjur Provided");
-					usernameSSHKeyCredential.setStoreContext(getContext());
-					allCredentials.add(usernameSSHKeyCredential);
+					allCredentials.add(reuseOrCreate(ConjurSecretUsernameSSHKeyCredentialsImpl.class,
+							"usernamesshkey-" + credentialID, diff,
+							existing -> Objects.equals(userName, existing.getUsername())
+									&& credentialID.equals(existing.getCredentialID())
+									&& sameConfiguration(conjurConfiguration, existing.getConjurConfiguration()),
+							() -> {
+								ConjurSecretUsernameSSHKeyCredentialsImpl usernameSSHKeyCredential = new ConjurSecretUsernameSSHKeyCredentialsImpl(
+										CredentialsScope.GLOBAL, "usernamesshkey-" + credentialID, userName,
+										credentialID, conjurConfiguration, null /* no passphrase yet */,
+										"CyberArk Conjur Provided");
+								usernameSSHKeyCredential.setStoreContext(getContext());
+								return usernameSSHKeyCredential;
+							}));
 					break;
 				default:
 					break;
 				}
 
-				LOGGER.log(Level.FINEST, String.format("*** Variable Path: %s  userName:[%s]  credentialType:[%s]",
-						variablePath, userName, credentialType));
+				LOGGER.log(Level.FINEST, "*** Variable Path: {0}  userName:[{1}]  credentialType:[{2}]",
+						new Object[] { variablePath, userName, credentialType });
+
+			}
 
+			CredentialsSnapshot last = previous;
+			int removed = 0;
+			for (StandardCredentials credential : last) {
+				if (!diff.ids.contains(credential.getId())) {
+					removed++;
+				}
+			}
+			CredentialsSnapshot snapshot = CredentialsSnapshot.refreshed(allCredentials, diff.added, diff.changed,
+					removed);
+			previous = snapshot;
+			if (diff.added + diff.changed + removed > 0) {
+				// cached resolutions may point to replaced or removed credentials
+				CredentialResolutionCache.invalidateAll();
+				resolvedIds.invalidateAll();
 			}
+			LOGGER.log(Level.FINE, "Conjur credentials of {0} refreshed: {1} added, {2} changed, {3} removed",
+					new Object[] { getContext().getDisplayName(), diff.added, diff.changed, removed });
+			return snapshot;
 
 		} catch (Exception e) {
 			LOGGER.log(Level.SEVERE, "EXCEPTION: CredentialSuplier => " + e.getMessage());
+			// fail the load so the last listing keeps being served, the supplier
+			// lists no credentials once it is too old
+			throw new IllegalStateException("Retrieving credentials from Conjur failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Like {@link #resolve(String, ModelObject)}, but remembers the resolution per
+	 * store, an ID that resolved to nothing included
+	 *
+	 * @param id      credential ID
+	 * @param context item or folder of the store
+	 * @return the credential, or null if no variable matches the ID
+	 * @throws IOException if Conjur cannot be reached
+	 */
+	static StandardCredentials resolveCached(String id, ModelObject context) throws IOException {
+		String key = ConjurCredentialStore.registryKey(context) + "|" + id;
+		Optional<StandardCredentials> resolved = resolvedIds.getIfPresent(key);
+		if (resolved == null) {
+			resolved = Optional.ofNullable(resolve(id, context));
+			resolvedIds.put(key, resolved);
+		}
+		return resolved.orElse(null);
+	}
+
+	/**
+	 * Resolves the credential with the ID from the single variable the ID derives
+	 * from, without listing the resources. Only paths without dashes, or whose
+	 * dashes all stand for slashes, are found this way. A variable whose path
+	 * equals the ID wins over one whose slashes were turned into dashes.
+	 *
+	 * @param id      credential ID
+	 * @param context item or folder of the store
+	 * @return the credential, or null if no variable matches the ID
+	 * @throws IOException if Conjur cannot be reached
+	 */
+	static StandardCredentials resolve(String id, ModelObject context) throws IOException {
+		ConjurConfiguration conjurConfiguration = ConjurAPI.getConfigurationFromContext(context, null);
+		if (conjurConfiguration == null || StringUtils.isNotBlank(conjurConfiguration.getResourceSearch())) {
+			// only the listing tells whether a variable matches the search term
+			return null;
+		}
+		String prefix = StringUtils.trimToNull(conjurConfiguration.getResourcePathPrefix());
+		List<String> bases = Arrays.asList(StringUtils.removeStart(id, "usernamesshkey-"),
+				StringUtils.removeStart(id, "username-"), id);
+		Set<String> paths = new LinkedHashSet<String>(bases);
+		for (String base : bases) {
+			paths.add(base.replace("-", "/"));
+		}
+
+		OkHttpClient client = ConjurAPIUtils.getHttpClient(conjurConfiguration);
+		String authToken = ConjurAPI.getAuthorizationToken(client, conjurConfiguration, context);
+		for (String path : paths) {
+			if (path.isEmpty() || (prefix != null && !path.startsWith(prefix))) {
+				continue;
+			}
+			ConjurAPI.ConjurVariable variable = ConjurAPI.getVariable(client, conjurConfiguration, authToken, path);
+			StandardCredentials credential = variable != null
+					? credentialOf(id, variable, conjurConfiguration, context)
+					: null;
+			if (credential != null) {
+				LOGGER.log(Level.FINE, "Resolved {0} from Conjur variable {1}", new Object[] { id, path });
+				return credential;
+			}
+		}
+		return null;
+	}
+
+	private static StandardCredentials credentialOf(String id, ConjurAPI.ConjurVariable variable,
+			ConjurConfiguration conjurConfiguration, ModelObject context) {
+		String credentialID = variable.variablePath.replace("/", "-");
+		String credentialType = credentialTypeOf(variable);
+		if (id.equals(credentialID)) {
+			ConjurSecretCredentialsImpl credential = new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL,
+					credentialID, variable.variablePath, "CyberArk Conjur Provided");
+			credential.setStoreContext(context);
+			return credential;
+		}
+		if ("usernamecredential".equals(credentialType) && id.equals("username-" + credentialID)) {
+			ConjurSecretUsernameCredentialsImpl credential = new ConjurSecretUsernameCredentialsImpl(
+					CredentialsScope.GLOBAL, id, variable.userName, credentialID, conjurConfiguration,
+					"CyberArk Conjur Provided");
+			credential.setStoreContext(context);
+			return credential;
+		}
+		if ("usernamesshkeycredential".equals(credentialType) && id.equals("usernamesshkey-" + credentialID)) {
+			ConjurSecretUsernameSSHKeyCredentialsImpl credential = new ConjurSecretUsernameSSHKeyCredentialsImpl(
+					CredentialsScope.GLOBAL, id, variable.userName, credentialID, conjurConfiguration,
+					null /* no passphrase yet */, "CyberArk Conjur Provided");
+			credential.setStoreContext(context);
+			return credential;
+		}
+		return null;
+	}
+
+	/**
+	 * @param variable a listed variable
+	 * @return the credential type annotated on the variable, defaulting on whether
+	 *         it has a username
+	 */
+	private static String credentialTypeOf(ConjurAPI.ConjurVariable variable) {
+		if (variable.credentialType != null) {
+			return variable.credentialType;
+		}
+		return variable.userName == null ? "credential" : "usernamecredential";
+	}
+
+	/**
+	 * Lists the Conjur variables visible to the identity of the token, the pages
+	 * after the first are requested concurrently. A listing younger than a
+	 * quarter of the store TTL, loaded for the same identity by another store, is
+	 * reused.
+	 *
+	 * @param client        OkHttp client
+	 * @param configuration the Conjur configuration of the context
+	 * @param authToken     access token of the identity
+	 * @return the variables
+	 * @throws IOException if listing the variables fails
+	 */
+	private List<ConjurAPI.ConjurVariable> listVariables(OkHttpClient client, ConjurConfiguration configuration,
+			String authToken) throws IOException {
+		String key = listingKey(configuration, authToken);
+		long maxAgeNanos = ConjurCredentialProvider.getStoreTtl(getContext()).toNanos() / 4;
+		SharedListing listing = sharedListings.getIfPresent(key);
+		if (listing == null || System.nanoTime() - listing.loadedAtNanos >= maxAgeNanos) {
+			listing = listings.execute(key, () -> {
+				CompletableFuture<List<ConjurAPI.ConjurVariable>> variables = ConjurAPI.getVariablesAsync(client,
+						configuration, authToken);
+				try {
+					SharedListing loaded = new SharedListing(SingleFlight.await(variables), System.nanoTime());
+					sharedListings.put(key, loaded);
+					return loaded;
+				} finally {
+					// stops the remaining pages if the wait was interrupted
+					variables.cancel(true);
+				}
+			});
+		} else {
+			LOGGER.log(Level.FINE, "Reusing the Conjur listing of {0}", configuration.getApplianceURL());
+		}
+		return listing.variables;
+	}
+
+	/**
+	 * Forgets the listings shared between stores and the credentials resolved by
+	 * ID, the next refresh of every store lists the variables again
+	 */
+	public static void invalidateListings() {
+		sharedListings.invalidateAll();
+		resolvedIds.invalidateAll();
+	}
+
+	/**
+	 * The identity of a cached token covers the login credential and a hash of
+	 * its API key, so only stores that authenticated with the same API key share
+	 * a listing. Tokens not in the cache are only shared with holders of the
+	 * same token.
+	 *
+	 * @param configuration the Conjur configuration of the context
+	 * @param authToken     access token of the identity
+	 * @return key of the shared listing
+	 */
+	static String listingKey(ConjurConfiguration configuration, String authToken) {
+		String identity = AccessTokenCache.identityOf(authToken);
+		if (identity == null) {
+			identity = configuration.getApplianceURL() + "|" + configuration.getAccount() + "|"
+					+ Hashing.sha256().hashString(String.valueOf(authToken), StandardCharsets.UTF_8);
 		}
+		// stores narrowing the listing differently do not share it
+		return identity + "|" + configuration.getResourcePathPrefix() + "|" + configuration.getResourceSearch();
+	}
 
-		return allCredentials.stream().map(cred -> {
-			return cred;
-		}).collect(Collectors.toList());
+	/**
+	 * @param configuration configuration of the listing
+	 * @param existing      configuration a listed credential was created with
+	 * @return true if both point to the same Conjur account with the same login
+	 */
+	static boolean sameConfiguration(ConjurConfiguration configuration, ConjurConfiguration existing) {
+		if (configuration == existing) {
+			return true;
+		}
+		if (configuration == null || existing == null) {
+			return false;
+		}
+		return Objects.equals(configuration.getApplianceURL(), existing.getApplianceURL())
+				&& Objects.equals(configuration.getAccount(), existing.getAccount())
+				&& Objects.equals(configuration.getCredentialID(), existing.getCredentialID())
+				&& Objects.equals(configuration.getCertificateCredentialID(), existing.getCertificateCredentialID());
+	}
+
+	/**
+	 * Returns the credential of the previous listing if it is unchanged, creates a
+	 * new one otherwise
+	 *
+	 * @param type      credential class
+	 * @param id        credential ID
+	 * @param diff      records whether the credential was added or changed
+	 * @param unchanged tests whether the previous credential matches the listing
+	 * @param create    creates the credential
+	 * @return the credential to list
+	 */
+	private <T extends StandardCredentials> T reuseOrCreate(Class<T> type, String id, ListingDiff diff,
+			Predicate<T> unchanged, Supplier<T> create) {
+		StandardCredentials existing = previous.getById(id);
+		diff.ids.add(id);
+		if (type.isInstance(existing) && unchanged.test(type.cast(existing))) {
+			return type.cast(existing);
+		}
+		if (existing == null) {
+			diff.added++;
+		} else {
+			diff.changed++;
+		}
+		return create.get();
 	}
 
 	private ModelObject getContext() {
@@ -2,26 +2,115 @@ package org.conjur.jenkins.credentials;
 
 import java.io.Serializable;
 import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import com.google.common.base.Preconditions;
 
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.SystemProperties;
+
 /**
- * Adaptation of Guava's ExpiringMemoizingSupplier which adds lazy duration lookup functionality.
+ * Adaptation of Guava's ExpiringMemoizingSupplier which adds lazy duration lookup and refresh ahead.
  *
  * @see <a href="https://github.com/google/guava/blob/v29.0/guava/src/com/google/common/base/Suppliers.java">Suppliers.java</a>
  */
 final class CustomSuppliers {
 
+    private static final Logger LOGGER = Logger.getLogger(CustomSuppliers.class.getName());
+
+    /** Threads refreshing memoized values in the background */
+    static final int REFRESH_THREADS = SystemProperties
+            .getInteger(CustomSuppliers.class.getName() + ".refreshThreads", 4);
+
+    /** Refreshes waiting for a thread, further refreshes wait for the next access */
+    static final int REFRESH_QUEUE_SIZE = SystemProperties
+            .getInteger(CustomSuppliers.class.getName() + ".refreshQueueSize", 1000);
+
+    /** Durations a value is served for after its load while reloads fail */
+    static final int MAX_STALE_DURATIONS = Math.max(1, SystemProperties
+            .getInteger(CustomSuppliers.class.getName() + ".maxStaleDurations", 3));
+
+    private static final Executor refreshExecutor = newRefreshExecutor();
+
     private CustomSuppliers() {
 
     }
 
+    /**
+     * Memoizes the value for the duration, the caller after the expiry reloads it.
+     *
+     * @param base     supplier loading the value
+     * @param duration how long a value is valid
+     * @return the memoizing supplier
+     * @deprecated use {@link #refreshAhead(Supplier, Supplier)}
+     */
+    @Deprecated
     public static <T> Supplier<T> memoizeWithExpiration(
             Supplier<T> base, Duration duration) {
         return new ExpiringMemoizingSupplier<>(base, duration);
     }
 
+    /**
+     * Memoizes the value and reloads it in the background ahead of its expiry.
+     * Callers get the current value while it reloads, and keep getting it when
+     * the reload fails, for at most {@link #MAX_STALE_DURATIONS} durations.
+     *
+     * @param base     supplier loading the value, fails with a RuntimeException
+     * @param duration looked up on each load, how long a value is valid
+     * @return the memoizing supplier
+     */
+    public static <T> Supplier<T> refreshAhead(
+            Supplier<T> base, Supplier<Duration> duration) {
+        return refreshAhead(base, duration, null);
+    }
+
+    /**
+     * Like {@link #refreshAhead(Supplier, Supplier)}, but once no loaded value
+     * can be served anymore a failed load yields the fallback until the next
+     * retry instead of throwing.
+     *
+     * @param base     supplier loading the value, fails with a RuntimeException
+     * @param duration looked up on each load, how long a value is valid
+     * @param fallback value served while loads fail, null to throw the failure
+     * @return the memoizing supplier
+     */
+    public static <T> Supplier<T> refreshAhead(
+            Supplier<T> base, Supplier<Duration> duration, T fallback) {
+        return new RefreshAheadSupplier<>(base, duration, fallback, refreshExecutor, System::nanoTime);
+    }
+
+    /**
+     * @param supplier a supplier returned by {@link #refreshAhead}
+     * @return the value currently memoized, or null if there is none, never loads
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T peek(Supplier<T> supplier) {
+        if (supplier instanceof RefreshAheadSupplier) {
+            RefreshAheadSupplier.Snapshot<T> snapshot = ((RefreshAheadSupplier<T>) supplier).snapshot;
+            return snapshot != null && snapshot.failure == null ? snapshot.value : null;
+        }
+        return null;
+    }
+
+    private static Executor newRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Conjur credentials refresh"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     static class ExpiringMemoizingSupplier<T>
             implements Supplier<T>, Serializable {
         final Supplier<T> delegate;
@@ -70,4 +159,132 @@ final class CustomSuppliers {
 
         private static final long serialVersionUID = 0;
     }
-}
\ No newline at end of file
+
+    static class RefreshAheadSupplier<T> implements Supplier<T> {
+
+        static final class Snapshot<T> {
+            final T value;
+            final RuntimeException failure;
+            final long loadedNanos;
+            final long refreshAtNanos;
+            final long expirationNanos;
+
+            Snapshot(T value, RuntimeException failure, long loadedNanos, long refreshAtNanos,
+                    long expirationNanos) {
+                this.value = value;
+                this.failure = failure;
+                this.loadedNanos = loadedNanos;
+                this.refreshAtNanos = refreshAtNanos;
+                this.expirationNanos = expirationNanos;
+            }
+
+            T get() {
+                if (failure != null && value == null) {
+                    throw failure;
+                }
+                return value;
+            }
+        }
+
+        final Supplier<T> delegate;
+        final Supplier<Duration> duration;
+        final T fallback;
+        final Executor executor;
+        final LongSupplier clock;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        volatile Snapshot<T> snapshot;
+
+        RefreshAheadSupplier(
+                Supplier<T> delegate, Supplier<Duration> duration, Executor executor, LongSupplier clock) {
+            this(delegate, duration, null, executor, clock);
+        }
+
+        RefreshAheadSupplier(Supplier<T> delegate, Supplier<Duration> duration, T fallback, Executor executor,
+                LongSupplier clock) {
+            this.delegate = Preconditions.checkNotNull(delegate);
+            this.duration = Preconditions.checkNotNull(duration);
+            this.fallback = fallback;
+            this.executor = executor;
+            this.clock = clock;
+        }
+
+        @Override
+        public T get() {
+            Snapshot<T> current = snapshot;
+            long now = clock.getAsLong();
+            if (current == null || now - current.expirationNanos >= 0) {
+                // nothing usable yet, or idle for longer than the duration
+                current = load(current);
+            } else if (now - current.refreshAtNanos >= 0) {
+                refreshInBackground(current);
+            }
+            return current.get();
+        }
+
+        private synchronized Snapshot<T> load(Snapshot<T> seen) {
+            Snapshot<T> current = snapshot;
+            if (current != seen) {  // loaded by another caller meanwhile
+                return current;
+            }
+            return reload();
+        }
+
+        private void refreshInBackground(Snapshot<T> seen) {
+            if (!refreshing.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        // skipped when a caller loaded meanwhile
+                        load(seen);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.set(false);
+                LOGGER.log(Level.FINE, "Refresh queue full, refreshing on a later access");
+            }
+        }
+
+        // callers hold the monitor
+        private Snapshot<T> reload() {
+            Snapshot<T> previous = snapshot;
+            long durationNanos = getDurationNanos();
+            Snapshot<T> next;
+            try {
+                T t = delegate.get();
+                long now = clock.getAsLong();
+                // refresh somewhere in the second half of the duration so values
+                // loaded together do not all expire together
+                next = new Snapshot<>(t, null, now, now + durationNanos - jittered(durationNanos / 4),
+                        now + durationNanos);
+            } catch (RuntimeException e) {
+                long now = clock.getAsLong();
+                long retryNanos = jittered(durationNanos / 4);
+                long staleUntil = previous != null ? previous.loadedNanos + MAX_STALE_DURATIONS * durationNanos : now;
+                if (previous != null && previous.failure == null && now - staleUntil < 0) {
+                    LOGGER.log(Level.WARNING, "Refresh failed, keeping the last value: {0}", e.getMessage());
+                    long expiration = staleUntil - (now + durationNanos) < 0 ? staleUntil : now + durationNanos;
+                    next = new Snapshot<>(previous.value, null, previous.loadedNanos, now + retryNanos, expiration);
+                } else {
+                    // the fallback, if any, is served until the retry
+                    next = new Snapshot<>(fallback, e, now, now + retryNanos, now + retryNanos);
+                }
+            }
+            snapshot = next;
+            return next;
+        }
+
+        private long getDurationNanos() {
+            Duration d = duration.get();
+            Preconditions.checkArgument(!d.isNegative() && !d.isZero());
+            return d.toNanos();
+        }
+
+        private static long jittered(long nanos) {
+            return nanos + ThreadLocalRandom.current().nextLong(nanos + 1);
+        }
+    }
+}
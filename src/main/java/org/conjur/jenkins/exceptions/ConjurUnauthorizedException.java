@@ -0,0 +1,23 @@
+package org.conjur.jenkins.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown when Conjur rejects the access token of a request (401-UnAuthorized)
+ * 
+ *
+ */
+public class ConjurUnauthorizedException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * throws error message if the access token was rejected
+	 * 
+	 * @param errorMessage
+	 */
+	public ConjurUnauthorizedException(String errorMessage) {
+		super(errorMessage);
+	}
+
+}
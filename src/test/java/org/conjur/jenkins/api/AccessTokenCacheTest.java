@@ -0,0 +1,171 @@
+package org.conjur.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.exceptions.ConjurUnauthorizedException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class AccessTokenCacheTest {
+
+	private static final String KEY = "https://conjur.example.com|authn|account|host/app|conjur-login|hash";
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final AtomicInteger authentications = new AtomicInteger();
+
+	/** Authentication the loader starts, completed by the test */
+	private volatile CompletableFuture<String> pending;
+
+	private final Supplier<CompletableFuture<String>> loader = () -> {
+		authentications.incrementAndGet();
+		pending = new CompletableFuture<String>();
+		return pending;
+	};
+
+	@Before
+	public void setUp() {
+		AccessTokenCache.clock = now::get;
+	}
+
+	@After
+	public void tearDown() {
+		AccessTokenCache.clock = System::nanoTime;
+		AccessTokenCache.invalidateAll();
+	}
+
+	@Test
+	public void coldMissSharesOneAuthentication() throws Exception {
+		CompletableFuture<String> first = AccessTokenCache.getAsync(KEY, 480L, loader);
+		CompletableFuture<String> second = AccessTokenCache.getAsync(KEY, 480L, loader);
+
+		assertFalse(first.isDone());
+		assertFalse(second.isDone());
+		assertEquals(1, authentications.get());
+
+		pending.complete("token-1");
+		assertEquals("token-1", first.get());
+		assertEquals("token-1", second.get());
+		assertEquals("token-1", AccessTokenCache.getAsync(KEY, 480L, loader).get());
+		assertEquals(1, authentications.get());
+	}
+
+	@Test
+	public void currentTokenIsServedWhileItIsRenewed() throws Exception {
+		AccessTokenCache.getAsync(KEY, 480L, loader);
+		pending.complete("token-1");
+
+		now.set(seconds(419));
+		assertEquals("token-1", AccessTokenCache.getAsync(KEY, 480L, loader).get());
+		assertEquals(1, authentications.get());
+
+		// renewed 60 seconds ahead of the expiry
+		now.set(seconds(430));
+		CompletableFuture<String> renewing = AccessTokenCache.getAsync(KEY, 480L, loader);
+		assertEquals(2, authentications.get());
+		CompletableFuture<String> served = AccessTokenCache.getAsync(KEY, 480L, loader);
+		assertTrue(served.isDone());
+		assertEquals("token-1", served.get());
+		assertEquals("one renewal at a time", 2, authentications.get());
+
+		pending.complete("token-2");
+		assertEquals("token-2", renewing.get());
+		now.set(seconds(500));
+		assertEquals("token-2", AccessTokenCache.getAsync(KEY, 480L, loader).get());
+		assertEquals(2, authentications.get());
+	}
+
+	@Test
+	public void failedRenewalKeepsTheCurrentTokenUntilItExpires() throws Exception {
+		AccessTokenCache.getAsync(KEY, 480L, loader);
+		pending.complete("token-1");
+
+		now.set(seconds(430));
+		CompletableFuture<String> renewing = AccessTokenCache.getAsync(KEY, 480L, loader);
+		pending.completeExceptionally(new IOException("Error authenticating to Conjur [500]"));
+		assertEquals("token-1", renewing.get());
+
+		now.set(seconds(480));
+		CompletableFuture<String> expired = AccessTokenCache.getAsync(KEY, 480L, loader);
+		assertFalse("an expired token is not served", expired.isDone());
+		pending.complete("token-2");
+		assertEquals("token-2", expired.get());
+	}
+
+	@Test
+	public void blockingGetRenewsAheadOfExpiry() throws Exception {
+		assertEquals("token-1", AccessTokenCache.get(KEY, 480L, () -> "token-1"));
+
+		now.set(seconds(430));
+		assertEquals("token-1", AccessTokenCache.get(KEY, 480L, () -> {
+			throw new IOException("Error authenticating to Conjur [500]");
+		}));
+		assertEquals("token-2", AccessTokenCache.get(KEY, 480L, () -> "token-2"));
+		assertEquals("token-2", AccessTokenCache.get(KEY, 480L, () -> "token-3"));
+	}
+
+	@Test
+	public void cancellingTheOnlyWaiterCancelsTheAuthentication() throws Exception {
+		CompletableFuture<String> first = AccessTokenCache.getAsync(KEY, 480L, loader);
+		CompletableFuture<String> second = AccessTokenCache.getAsync(KEY, 480L, loader);
+
+		first.cancel(true);
+		assertFalse("still awaited by the second caller", pending.isCancelled());
+		second.cancel(true);
+		assertTrue(pending.isCancelled());
+
+		CompletableFuture<String> retried = AccessTokenCache.getAsync(KEY, 480L, loader);
+		assertEquals(2, authentications.get());
+		pending.complete("token-1");
+		assertEquals("token-1", retried.get());
+	}
+
+	@Test
+	public void tokenRejectedByConjurIsRenewed() throws Exception {
+		assertEquals("stale-token", AccessTokenCache.get(KEY, 480L, () -> "stale-token"));
+		assertEquals(KEY, AccessTokenCache.identityOf("stale-token"));
+
+		try (MockWebServer server = new MockWebServer()) {
+			server.enqueue(new MockResponse().setResponseCode(401));
+			ConjurConfiguration configuration = new ConjurConfiguration(server.url("/").toString(), "account");
+
+			assertThrows(ConjurUnauthorizedException.class,
+					() -> ConjurAPI.getSecret(new OkHttpClient(), configuration, "stale-token", "db/password"));
+		}
+
+		assertNull(AccessTokenCache.identityOf("stale-token"));
+		assertEquals("fresh-token", AccessTokenCache.get(KEY, 480L, () -> "fresh-token"));
+	}
+
+	@Test
+	public void expiredTokensAreDropped() throws Exception {
+		assertEquals("token-1", AccessTokenCache.get(KEY, 480L, () -> "token-1"));
+		assertEquals(KEY, AccessTokenCache.identityOf("token-1"));
+
+		now.set(seconds(480));
+		assertNull(AccessTokenCache.identityOf("token-1"));
+		assertEquals("token-2", AccessTokenCache.get(KEY, 480L, () -> "token-2"));
+		assertEquals(KEY, AccessTokenCache.identityOf("token-2"));
+	}
+
+	private static long seconds(long seconds) {
+		return TimeUnit.SECONDS.toNanos(seconds);
+	}
+}
@@ -2,22 +2,49 @@
 package org.conjur.jenkins.api;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.conjur.jenkins.api.ConjurAPI.ConjurAuthnInfo;
+import org.conjur.jenkins.api.ConjurAPI.ConjurSecretsResult;
+import org.conjur.jenkins.api.ConjurAPI.ConjurVariable;
 import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.configuration.FolderConjurConfiguration;
 import org.conjur.jenkins.configuration.GlobalConjurConfiguration;
+import org.conjur.jenkins.exceptions.ConjurUnauthorizedException;
 import org.conjur.jenkins.jwtauth.impl.JwtToken;
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -25,11 +52,23 @@ import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import com.cloudbees.hudson.plugins.folder.Folder;
 import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
 
+import hudson.ExtensionList;
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
 import hudson.model.ModelObject;
+import hudson.model.User;
+import hudson.util.DescribableList;
+import jenkins.model.GlobalConfiguration;
 import okhttp3.Call;
+import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
 
 @RunWith(MockitoJUnitRunner.class)
 
@@ -99,6 +138,728 @@ public class ConjurAPITest {
 		}
 	}
 	@Test
+	public void getSecretsReturnsFullBatch() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(200, null, "host/frontend/frontend-01", "host/frontend/frontend-02"));
+			ConjurSecretsResult secrets = ConjurAPI.getSecrets(new OkHttpClient(), configuration(server),
+					"batch-token", Arrays.asList("host/frontend/frontend-01", "host/frontend/frontend-02"));
+
+			assertEquals("value of host/frontend/frontend-01", secrets.secrets.get("host/frontend/frontend-01"));
+			assertEquals("value of host/frontend/frontend-02", secrets.secrets.get("host/frontend/frontend-02"));
+			assertTrue(secrets.errors.isEmpty());
+			assertEquals(1, server.getRequestCount());
+			RecordedRequest request = server.takeRequest();
+			assertEquals("/secrets", request.getRequestUrl().encodedPath());
+			assertEquals("Token token=\"batch-token\"", request.getHeader("Authorization"));
+		}
+	}
+
+	@Test
+	public void getSecretsFallsBackToSingleFetchesWhenBatchIsRejected() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(404, null, "host/frontend/frontend-01"));
+			ConjurSecretsResult secrets = ConjurAPI.getSecrets(new OkHttpClient(), configuration(server),
+					"fallback-token", Arrays.asList("host/frontend/frontend-01", "host/frontend/frontend-02"));
+
+			assertEquals("value of host/frontend/frontend-01", secrets.secrets.get("host/frontend/frontend-01"));
+			assertNull(secrets.secrets.get("host/frontend/frontend-02"));
+			assertTrue(secrets.errors.get("host/frontend/frontend-02").getMessage().contains("404"));
+			assertEquals(3, server.getRequestCount());
+		}
+	}
+
+	@Test
+	public void getSecretsRaisesUnauthorizedOn401() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(401, 401, "host/frontend/frontend-01"));
+			assertThrows(ConjurUnauthorizedException.class,
+					() -> ConjurAPI.getSecrets(new OkHttpClient(), configuration(server), "rejected-token",
+							Arrays.asList("host/frontend/frontend-01", "host/frontend/frontend-02")));
+		}
+	}
+
+	@Test
+	public void getSecretsSplitsBatchesAtConfiguredSize() throws Exception {
+		List<String> paths = Arrays.asList("app/1", "app/2", "app/3", "app/4", "app/5");
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(200, null, paths.toArray(new String[0])));
+			ConjurSecretsResult secrets = ConjurAPI
+					.getSecretsAsync(new OkHttpClient(), configuration(server), "split-token", paths, 2).get();
+
+			assertEquals(5, secrets.secrets.size());
+			assertEquals(3, server.getRequestCount());
+			List<Integer> batchSizes = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				batchSizes.add(server.takeRequest().getRequestUrl().queryParameter("variable_ids").split(",").length);
+			}
+			Collections.sort(batchSizes);
+			assertEquals(Arrays.asList(1, 2, 2), batchSizes);
+		}
+	}
+
+	@Test
+	public void getVariableFetchesTheSingleResource() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) {
+					if (!"/resources/myConjurAccount/variable/app/login".equals(request.getPath())) {
+						return new MockResponse().setResponseCode(404);
+					}
+					return new MockResponse().setBody("{\"id\":\"myConjurAccount:variable:app/login\","
+							+ "\"annotations\":[{\"name\":\"jenkins_credential_username\",\"value\":\"app\"}]}");
+				}
+			});
+
+			ConjurVariable variable = ConjurAPI.getVariable(new OkHttpClient(), configuration(server), "token",
+					"app/login");
+			assertEquals("app/login", variable.variablePath);
+			assertEquals("app", variable.userName);
+			assertEquals("Token token=\"token\"", server.takeRequest().getHeader("Authorization"));
+
+			assertNull(ConjurAPI.getVariable(new OkHttpClient(), configuration(server), "token", "app-login"));
+			assertEquals(2, server.getRequestCount());
+		}
+	}
+
+	@Test
+	public void getVariablesAsyncRequestsPagesInWavesUntilAShortPage() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(listing(7));
+			List<ConjurVariable> variables = ConjurAPI
+					.getVariablesAsync(new OkHttpClient(), configuration(server), "paging-token", 2)
+					.get(10, TimeUnit.SECONDS);
+
+			assertEquals(Arrays.asList("app/0", "app/1", "app/2", "app/3", "app/4", "app/5", "app/6"),
+					paths(variables));
+			// the first page alone, then one wave of 4 pages holding the short page
+			assertEquals(Arrays.asList(0, 2, 4, 6, 8), requestedOffsets(server));
+		}
+	}
+
+	@Test
+	public void getVariablesRequestsPagesUntilAShortPage() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(listing(7));
+			List<ConjurVariable> variables = ConjurAPI.getVariables(new OkHttpClient(), configuration(server),
+					"paging-token", 2);
+
+			assertEquals(Arrays.asList("app/0", "app/1", "app/2", "app/3", "app/4", "app/5", "app/6"),
+					paths(variables));
+			assertEquals(Arrays.asList(0, 2, 4, 6), requestedOffsets(server));
+		}
+	}
+
+	@Test
+	public void concurrentFetchesOfASecretShareOneCall() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(blocking(release, "app/shared", secrets(200, null, "app/shared")));
+			OkHttpClient client = new OkHttpClient();
+			List<CompletableFuture<String>> fetches = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				fetches.add(ConjurAPI.getSecretAsync(client, configuration(server), "shared-token", "app/shared"));
+			}
+			CompletableFuture<String> otherToken = ConjurAPI.getSecretAsync(client, configuration(server),
+					"other-token", "app/shared");
+			assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+			assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+
+			release.countDown();
+			for (CompletableFuture<String> fetch : fetches) {
+				assertEquals("value of app/shared", fetch.get(10, TimeUnit.SECONDS));
+			}
+			assertEquals("value of app/shared", otherToken.get(10, TimeUnit.SECONDS));
+			assertEquals("one call per token", 2, server.getRequestCount());
+
+			// the result is not kept once the call completed
+			ConjurAPI.getSecret(client, configuration(server), "shared-token", "app/shared");
+			assertEquals(3, server.getRequestCount());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void rejectedFetchInvalidatesTheTokenAndIsNotReused() throws Exception {
+		String key = "https://conjur_server:8083|authn|myConjurAccount|host/app|coalesced|hash";
+		assertEquals("rejected-shared-token", AccessTokenCache.get(key, 480L, () -> "rejected-shared-token"));
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger requests = new AtomicInteger();
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+					if (requests.incrementAndGet() == 1) {
+						release.await(10, TimeUnit.SECONDS);
+						return new MockResponse().setResponseCode(401);
+					}
+					return new MockResponse().setBody("rotated value");
+				}
+			});
+			OkHttpClient client = new OkHttpClient();
+			CompletableFuture<String> first = ConjurAPI.getSecretAsync(client, configuration(server),
+					"rejected-shared-token", "app/db");
+			CompletableFuture<String> second = ConjurAPI.getSecretAsync(client, configuration(server),
+					"rejected-shared-token", "app/db");
+			assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+
+			release.countDown();
+			for (CompletableFuture<String> fetch : Arrays.asList(first, second)) {
+				ExecutionException error = assertThrows(ExecutionException.class,
+						() -> fetch.get(10, TimeUnit.SECONDS));
+				assertTrue(error.getCause() instanceof ConjurUnauthorizedException);
+			}
+			assertEquals(1, server.getRequestCount());
+			assertNull(AccessTokenCache.identityOf("rejected-shared-token"));
+
+			assertEquals("rotated value", ConjurAPI
+					.getSecretAsync(client, configuration(server), "rejected-shared-token", "app/db")
+					.get(10, TimeUnit.SECONDS));
+			assertEquals("the failure is not handed to later calls", 2, server.getRequestCount());
+		} finally {
+			release.countDown();
+			AccessTokenCache.invalidateAll();
+		}
+	}
+
+	@Test
+	public void variablePathSegmentsAreEncoded() throws Exception {
+		String path = "team a/db?password#1%";
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) {
+					if (request.getPath().startsWith("/secrets/")) {
+						return new MockResponse().setBody("value of " + request.getRequestUrl().pathSegments());
+					}
+					return new MockResponse().setBody("{\"id\":\"myConjurAccount:variable:" + path + "\"}");
+				}
+			});
+
+			assertEquals("value of [secrets, myConjurAccount, variable, team a, db?password#1%]",
+					ConjurAPI.getSecret(new OkHttpClient(), configuration(server), "encoding-token", path));
+			assertEquals("/secrets/myConjurAccount/variable/team%20a/db%3Fpassword%231%25",
+					server.takeRequest().getPath());
+			assertEquals(path,
+					ConjurAPI.getVariable(new OkHttpClient(), configuration(server), "encoding-token", path).variablePath);
+			assertEquals("/resources/myConjurAccount/variable/team%20a/db%3Fpassword%231%25",
+					server.takeRequest().getPath());
+		}
+	}
+
+	@Test
+	public void pathPrefixIsOnlyAppliedToTheListedVariables() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(listing("prod/db", "prod/dbpassword", "prod/api", "dev/db"));
+			ConjurConfiguration configuration = configuration(server);
+			configuration.setResourcePathPrefix(" prod/db ");
+
+			assertEquals(Arrays.asList("prod/db", "prod/dbpassword"),
+					paths(ConjurAPI.getVariables(new OkHttpClient(), configuration, "prefix-token")));
+			assertNull(server.takeRequest().getRequestUrl().queryParameter("search"));
+			assertEquals(Arrays.asList("prod/db", "prod/dbpassword"), paths(ConjurAPI
+					.getVariablesAsync(new OkHttpClient(), configuration, "prefix-token").get(10, TimeUnit.SECONDS)));
+			assertNull(server.takeRequest().getRequestUrl().queryParameter("search"));
+		}
+	}
+
+	@Test
+	public void searchTermIsSentWithoutFilteringTheListedVariables() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(listing("prod/db", "dev/db"));
+			ConjurConfiguration configuration = configuration(server);
+			configuration.setResourceSearch("jenkins_credential_type");
+
+			assertEquals(Arrays.asList("prod/db", "dev/db"),
+					paths(ConjurAPI.getVariables(new OkHttpClient(), configuration, "search-token")));
+			assertEquals("jenkins_credential_type",
+					server.takeRequest().getRequestUrl().queryParameter("search"));
+		}
+	}
+
+	@Test
+	public void searchTermAndPathPrefixAreCombined() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(listing("prod/db", "prod/dbpassword", "dev/db"));
+			ConjurConfiguration configuration = configuration(server);
+			configuration.setResourcePathPrefix("prod/");
+			configuration.setResourceSearch("db");
+
+			assertEquals(Arrays.asList("prod/db", "prod/dbpassword"), paths(ConjurAPI
+					.getVariablesAsync(new OkHttpClient(), configuration, "combined-token").get(10, TimeUnit.SECONDS)));
+			HttpUrl url = server.takeRequest().getRequestUrl();
+			assertEquals("db", url.queryParameter("search"));
+			assertEquals("variable", url.queryParameter("kind"));
+		}
+	}
+
+	@Test
+	public void asyncFetchesCompleteWithTheSecrets() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(200, null, "app/1", "app/2", "app/3"));
+			OkHttpClient client = new OkHttpClient();
+
+			assertEquals("value of app/1",
+					ConjurAPI.getSecretAsync(client, configuration(server), "async-token", "app/1").get(10, TimeUnit.SECONDS));
+			ConjurSecretsResult secrets = ConjurAPI.getSecretsAsync(client, configuration(server), "async-token",
+					Arrays.asList("app/2", "app/3")).get(10, TimeUnit.SECONDS);
+			assertEquals("value of app/2", secrets.secrets.get("app/2"));
+			assertEquals("value of app/3", secrets.secrets.get("app/3"));
+			assertTrue(secrets.errors.isEmpty());
+			assertEquals(2, server.getRequestCount());
+		}
+	}
+
+	@Test
+	public void asyncFailuresCompleteTheFutureExceptionally() throws Exception {
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(500, 500));
+			CompletableFuture<String> failed = ConjurAPI.getSecretAsync(new OkHttpClient(), configuration(server),
+					"failing-token", "app/db");
+			ExecutionException error = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+			assertTrue(error.getCause() instanceof IOException);
+			assertFalse(error.getCause() instanceof ConjurUnauthorizedException);
+			assertTrue(error.getCause().getMessage().contains("500"));
+		}
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(secrets(401, 401));
+			CompletableFuture<ConjurSecretsResult> rejected = ConjurAPI.getSecretsAsync(new OkHttpClient(),
+					configuration(server), "rejected-async-token", Arrays.asList("app/1", "app/2"));
+			ExecutionException error = assertThrows(ExecutionException.class,
+					() -> rejected.get(10, TimeUnit.SECONDS));
+			assertTrue(error.getCause() instanceof ConjurUnauthorizedException);
+		}
+	}
+
+	@Test
+	public void cancellingAnAsyncFetchCancelsItsCall() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(blocking(release, "app/slow", secrets(200, null, "app/slow")));
+			OkHttpClient client = new OkHttpClient();
+			CompletableFuture<String> secret = ConjurAPI.getSecretAsync(client, configuration(server),
+					"cancelled-token", "app/slow");
+			assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+			assertEquals(1, client.dispatcher().runningCallsCount());
+
+			assertTrue(secret.cancel(true));
+			awaitIdle(client);
+
+			release.countDown();
+			assertEquals("value of app/slow", ConjurAPI
+					.getSecretAsync(client, configuration(server), "cancelled-token", "app/slow").get(10, TimeUnit.SECONDS));
+			assertEquals(2, server.getRequestCount());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void cancellingAnAsyncListingStopsThePaging() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+					int offset = Integer.parseInt(request.getRequestUrl().queryParameter("offset"));
+					if (offset > 0) {
+						release.await(10, TimeUnit.SECONDS);
+					}
+					return new MockResponse().setBody(variables(offset, 2));
+				}
+			});
+			OkHttpClient client = new OkHttpClient();
+			CompletableFuture<List<ConjurVariable>> listing = ConjurAPI.getVariablesAsync(client,
+					configuration(server), "listing-token", 2);
+			for (int i = 0; i < 5; i++) {
+				assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+			}
+
+			assertTrue(listing.cancel(true));
+			awaitIdle(client);
+			release.countDown();
+			Thread.sleep(200);
+			assertEquals(5, server.getRequestCount());
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void blockingCallsDoNotWaitForTheDispatcher() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(blocking(release, "app/slow", secrets(200, null, "app/slow", "app/fast")));
+			OkHttpClient client = new OkHttpClient();
+			client.dispatcher().setMaxRequests(1);
+			CompletableFuture<String> slow = ConjurAPI.getSecretAsync(client, configuration(server), "blocking-token",
+					"app/slow");
+			assertNotNull(server.takeRequest(10, TimeUnit.SECONDS));
+
+			assertEquals("value of app/fast",
+					ConjurAPI.getSecret(client, configuration(server), "blocking-token", "app/fast"));
+			assertFalse(slow.isDone());
+
+			release.countDown();
+			assertEquals("value of app/slow", slow.get(10, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void folderSaveInvalidatesTheEffectiveConfiguration() {
+		ConjurConfiguration global = new ConjurConfiguration("https://global", "global-account");
+		ConjurConfiguration team = new ConjurConfiguration("https://team", "team-account");
+		Folder folder = folder(null);
+		when(folder.getFullName()).thenReturn("team");
+		FreeStyleProject job = job("team/job", folder);
+		ConjurAPI.invalidateConfigurations();
+		try (MockedStatic<GlobalConjurConfiguration> globalConfiguration = globalConfiguration(global)) {
+			assertSame(global, ConjurAPI.getConfigurationFromContext(job, null));
+
+			DescribableList properties = folder.getProperties();
+			FolderConjurConfiguration own = folderConfiguration(team);
+			when(properties.get(FolderConjurConfiguration.class)).thenReturn(own);
+			assertSame("cached until something is saved", global, ConjurAPI.getConfigurationFromContext(job, null));
+
+			new ConjurAPI.ConfigurationChangeListener().onChange(mock(User.class), new XmlFile(new File("config.xml")));
+			assertSame(global, ConjurAPI.getConfigurationFromContext(job, null));
+
+			new ConjurAPI.ConfigurationChangeListener().onChange(folder, new XmlFile(new File("config.xml")));
+			assertSame(team, ConjurAPI.getConfigurationFromContext(job, null));
+			globalConfiguration.verify(GlobalConjurConfiguration::get, times(2));
+		} finally {
+			ConjurAPI.invalidateConfigurations();
+		}
+	}
+
+	@Test
+	public void savingAnItemKeepsTheConfigurationsOfOtherItems() {
+		Folder team = folder(null);
+		when(team.getFullName()).thenReturn("team");
+		FreeStyleProject job = job("team/job", team);
+		FreeStyleProject sibling = job("team-2/job", folder(null));
+		ConjurAPI.invalidateConfigurations();
+		try (MockedStatic<GlobalConjurConfiguration> globalConfiguration = globalConfiguration(
+				new ConjurConfiguration("https://global", "global-account"))) {
+			ConjurAPI.getConfigurationFromContext(job, null);
+			ConjurAPI.getConfigurationFromContext(sibling, null);
+			globalConfiguration.verify(GlobalConjurConfiguration::get, times(2));
+
+			new ConjurAPI.ConfigurationChangeListener().onChange(team, new XmlFile(new File("config.xml")));
+			ConjurAPI.getConfigurationFromContext(job, null);
+			ConjurAPI.getConfigurationFromContext(sibling, null);
+			globalConfiguration.verify(GlobalConjurConfiguration::get, times(3));
+		} finally {
+			ConjurAPI.invalidateConfigurations();
+		}
+	}
+
+	@Test
+	public void movingAnItemInvalidatesTheEffectiveConfiguration() {
+		ConjurConfiguration team = new ConjurConfiguration("https://team", "team-account");
+		ConjurConfiguration other = new ConjurConfiguration("https://other", "other-account");
+		FreeStyleProject job = job("team/job", folder(folderConfiguration(team)));
+		ConjurAPI.invalidateConfigurations();
+		try (MockedStatic<GlobalConjurConfiguration> globalConfiguration = globalConfiguration(
+				new ConjurConfiguration("https://global", "global-account"))) {
+			assertSame(team, ConjurAPI.getConfigurationFromContext(job, null));
+
+			doReturn(folder(folderConfiguration(other))).when(job).getParent();
+			assertSame(team, ConjurAPI.getConfigurationFromContext(job, null));
+
+			new ConjurAPI.ConfigurationItemListener().onLocationChanged(job, "team/job", "team/job");
+			assertSame(other, ConjurAPI.getConfigurationFromContext(job, null));
+		} finally {
+			ConjurAPI.invalidateConfigurations();
+		}
+	}
+
+	private static MockedStatic<GlobalConjurConfiguration> globalConfiguration(ConjurConfiguration configuration) {
+		GlobalConjurConfiguration global = mock(GlobalConjurConfiguration.class);
+		when(global.getConjurConfiguration()).thenReturn(configuration);
+		MockedStatic<GlobalConjurConfiguration> globalConfiguration = mockStatic(GlobalConjurConfiguration.class);
+		globalConfiguration.when(GlobalConjurConfiguration::get).thenReturn(global);
+		return globalConfiguration;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static Folder folder(FolderConjurConfiguration own) {
+		Folder folder = mock(Folder.class);
+		DescribableList properties = mock(DescribableList.class);
+		when(properties.get(FolderConjurConfiguration.class)).thenReturn(own);
+		doReturn(properties).when(folder).getProperties();
+		return folder;
+	}
+
+	private static FolderConjurConfiguration folderConfiguration(ConjurConfiguration configuration) {
+		FolderConjurConfiguration own = mock(FolderConjurConfiguration.class);
+		when(own.getInheritFromParent()).thenReturn(false);
+		when(own.getConjurConfiguration()).thenReturn(configuration);
+		return own;
+	}
+
+	private static FreeStyleProject job(String fullName, Folder folder) {
+		FreeStyleProject job = mock(FreeStyleProject.class);
+		when(job.getFullName()).thenReturn(fullName);
+		doReturn(folder).when(job).getParent();
+		return job;
+	}
+
+	private static ConjurConfiguration configuration(MockWebServer server) {
+		return new ConjurConfiguration(server.url("/").toString(), "myConjurAccount");
+	}
+
+	/**
+	 * Holds the single fetch of the blocked path until released
+	 */
+	private static Dispatcher blocking(CountDownLatch release, String blocked, Dispatcher answers) {
+		return new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+				if (request.getRequestUrl().encodedPath().endsWith("/variable/" + blocked)) {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				return answers.dispatch(request);
+			}
+		};
+	}
+
+	/**
+	 * @return a page of the resource listing holding count variables
+	 */
+	private static String variables(int from, int count) {
+		StringBuilder listing = new StringBuilder("[");
+		for (int i = from; i < from + count; i++) {
+			listing.append(i > from ? "," : "").append("{\"id\":\"myConjurAccount:variable:app/").append(i)
+					.append("\"}");
+		}
+		return listing.append("]").toString();
+	}
+
+	/**
+	 * Answers the pages of a listing of total variables
+	 */
+	private static Dispatcher listing(int total) {
+		return new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				HttpUrl url = request.getRequestUrl();
+				int limit = Integer.parseInt(url.queryParameter("limit"));
+				int offset = Integer.parseInt(url.queryParameter("offset"));
+				return new MockResponse().setBody(variables(offset, Math.max(0, Math.min(limit, total - offset))));
+			}
+		};
+	}
+
+	/**
+	 * Answers every listing with the variables, as Conjur would for a matching
+	 * search term
+	 */
+	private static Dispatcher listing(String... paths) {
+		return new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				JSONArray listing = new JSONArray();
+				for (String path : paths) {
+					listing.put(new JSONObject().put("id", "myConjurAccount:variable:" + path));
+				}
+				return new MockResponse().setBody(listing.toString());
+			}
+		};
+	}
+
+	private static List<Integer> requestedOffsets(MockWebServer server) throws InterruptedException {
+		List<Integer> offsets = new ArrayList<>();
+		for (int i = server.getRequestCount(); i > 0; i--) {
+			RecordedRequest request = server.takeRequest();
+			assertEquals("2", request.getRequestUrl().queryParameter("limit"));
+			offsets.add(Integer.parseInt(request.getRequestUrl().queryParameter("offset")));
+		}
+		Collections.sort(offsets);
+		return offsets;
+	}
+
+	private static List<String> paths(List<ConjurVariable> variables) {
+		List<String> paths = new ArrayList<>();
+		for (ConjurVariable variable : variables) {
+			paths.add(variable.variablePath);
+		}
+		return paths;
+	}
+
+	private static void awaitIdle(OkHttpClient client) throws InterruptedException {
+		for (int i = 0; i < 200 && client.dispatcher().runningCallsCount() > 0; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, client.dispatcher().runningCallsCount());
+	}
+
+	/**
+	 * Answers batch requests with the batch code and single fetches with 200 for
+	 * the known paths, the single code or 404 otherwise
+	 */
+	private static Dispatcher secrets(int batchCode, Integer singleCode, String... known) {
+		List<String> knownPaths = Arrays.asList(known);
+		return new Dispatcher() {
+			@Override
+			public MockResponse dispatch(RecordedRequest request) {
+				HttpUrl url = request.getRequestUrl();
+				if ("/secrets".equals(url.encodedPath())) {
+					if (batchCode != 200) {
+						return new MockResponse().setResponseCode(batchCode);
+					}
+					JSONObject values = new JSONObject();
+					for (String variableId : url.queryParameter("variable_ids").split(",")) {
+						String path = variableId.substring("myConjurAccount:variable:".length());
+						if (knownPaths.contains(path)) {
+							values.put(variableId, "value of " + path);
+						}
+					}
+					return new MockResponse().setBody(values.toString());
+				}
+				String prefix = "/secrets/myConjurAccount/variable/";
+				String path = url.encodedPath().substring(prefix.length());
+				if (singleCode == null && knownPaths.contains(path)) {
+					return new MockResponse().setBody("value of " + path);
+				}
+				return new MockResponse().setResponseCode(singleCode != null ? singleCode : 404);
+			}
+		};
+	}
+	@Test
+	@SuppressWarnings("unchecked")
+	public void jwtExchangeIsSharedPerJobIdentity() throws Exception {
+		AtomicInteger exchanges = new AtomicInteger();
+		AtomicLong now = new AtomicLong();
+		GlobalConjurConfiguration jwtConfig = mock(GlobalConjurConfiguration.class);
+		when(jwtConfig.getAuthWebServiceId()).thenReturn("jenkins");
+		when(jwtConfig.getTokenDurarionInSeconds()).thenReturn(120L);
+		ExtensionList<GlobalConfiguration> extensions = mock(ExtensionList.class);
+		when(extensions.get(GlobalConjurConfiguration.class)).thenReturn(jwtConfig);
+		ModelObject build1 = mock(ModelObject.class);
+		ModelObject build2 = mock(ModelObject.class);
+		ModelObject otherJob = mock(ModelObject.class);
+		ModelObject otherAudience = mock(ModelObject.class);
+		ModelObject otherFolder = mock(ModelObject.class);
+		AccessTokenCache.clock = now::get;
+		try (MockWebServer server = new MockWebServer();
+				MockedStatic<GlobalConfiguration> globalConfiguration = mockStatic(GlobalConfiguration.class);
+				MockedStatic<JwtToken> jwtTokens = mockStatic(JwtToken.class)) {
+			globalConfiguration.when(GlobalConfiguration::all).thenReturn(extensions);
+			// every build gets its own JWT, only the claims identifying the job make up the key
+			jwtTokens.when(() -> JwtToken.getUnsignedToken(eq("SecretRetrieval"), any())).thenAnswer(invocation -> {
+				Object context = invocation.getArgument(1);
+				JwtToken token = spy(new JwtToken());
+				long issuedAt = System.identityHashCode(context);
+				token.claim.put("jti", "build-" + issuedAt);
+				token.claim.put("iat", issuedAt);
+				token.claim.put("nbf", issuedAt - 30);
+				token.claim.put("exp", issuedAt + 120);
+				token.claim.put("jenkins_build_number", context == build2 ? 2 : 1);
+				token.claim.put("aud", context == otherAudience ? "other-conjur" : "conjur");
+				// jenkins_name identity format: jobs of different folders share the subject
+				token.claim.put("sub", context == otherJob ? "other-job" : "job");
+				token.claim.put("jenkins_full_name", context == otherFolder ? "other-team/job" : "team/job");
+				lenient().doReturn("signed-jwt").when(token).sign();
+				return token;
+			});
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) {
+					if ("/authn-jwt/jenkins/myConjurAccount/authenticate".equals(request.getPath())) {
+						return new MockResponse().setBody("conjur-token-" + exchanges.incrementAndGet());
+					}
+					return new MockResponse().setBody("value for " + request.getHeader("Authorization"));
+				}
+			});
+			ConjurConfiguration configuration = configuration(server);
+			OkHttpClient httpClient = new OkHttpClient();
+
+			List<String> secrets = new ArrayList<>();
+			for (int i = 0; i < 5; i++) {
+				String token = ConjurAPI.getAuthorizationToken(httpClient, configuration, i % 2 == 0 ? build1 : build2);
+				secrets.add(ConjurAPI.getSecret(httpClient, configuration, token, "db/password"));
+			}
+			assertEquals("one exchange serves every build of the job", 1, exchanges.get());
+			assertEquals(1, new HashSet<>(secrets).size());
+			assertEquals("jwt=signed-jwt", server.takeRequest().getBody().readUtf8());
+
+			ConjurAPI.getAuthorizationToken(httpClient, configuration, otherJob);
+			assertEquals("the subject is part of the key", 2, exchanges.get());
+			ConjurAPI.getAuthorizationToken(httpClient, configuration, otherAudience);
+			assertEquals("the audience is part of the key", 3, exchanges.get());
+			ConjurAPI.getAuthorizationToken(httpClient, configuration, otherFolder);
+			assertEquals("the full name is part of the key", 4, exchanges.get());
+
+			// kept for the JWT duration of 120 seconds, not the 480 seconds of a Conjur token
+			now.set(TimeUnit.SECONDS.toNanos(89));
+			ConjurAPI.getAuthorizationToken(httpClient, configuration, build1);
+			assertEquals(4, exchanges.get());
+			now.set(TimeUnit.SECONDS.toNanos(121));
+			ConjurAPI.getAuthorizationToken(httpClient, configuration, build1);
+			assertEquals(5, exchanges.get());
+		} finally {
+			AccessTokenCache.clock = System::nanoTime;
+			AccessTokenCache.invalidateAll();
+		}
+	}
+
+	@Test
+	public void accessTokensAreNotSharedAcrossApiKeys() throws IOException {
+		ConjurAuthnInfo prodApp = authnInfo("prod-app-credential", "real-api-key");
+		ConjurAuthnInfo impostor = authnInfo("folder-credential", "any-password");
+		ConjurAuthnInfo sameIdDifferentKey = authnInfo("prod-app-credential", "rotated-api-key");
+
+		assertNotEquals(ConjurAPI.accessTokenKey(prodApp), ConjurAPI.accessTokenKey(impostor));
+		assertNotEquals(ConjurAPI.accessTokenKey(prodApp), ConjurAPI.accessTokenKey(sameIdDifferentKey));
+		assertEquals(ConjurAPI.accessTokenKey(prodApp),
+				ConjurAPI.accessTokenKey(authnInfo("prod-app-credential", "real-api-key")));
+		assertFalse(ConjurAPI.accessTokenKey(prodApp).contains("real-api-key"));
+
+		try {
+			String token = AccessTokenCache.get(ConjurAPI.accessTokenKey(prodApp), 480L, () -> "prod-token");
+			String other = AccessTokenCache.get(ConjurAPI.accessTokenKey(impostor), 480L, () -> "impostor-token");
+			assertEquals("prod-token", token);
+			assertEquals("impostor-token", other);
+		} finally {
+			AccessTokenCache.invalidateAll();
+		}
+	}
+
+	private static ConjurAuthnInfo authnInfo(String credentialID, String apiKey) {
+		ConjurAuthnInfo conjurAuthn = new ConjurAuthnInfo();
+		conjurAuthn.applianceUrl = "https://conjur_server:8083";
+		conjurAuthn.authnPath = "authn";
+		conjurAuthn.account = "myConjurAccount";
+		conjurAuthn.login = "host/prod-app";
+		conjurAuthn.credentialID = credentialID;
+		conjurAuthn.apiKey = apiKey;
+		return conjurAuthn;
+	}
+
+	@Test
+	public void parseVariables() throws IOException {
+		String listing = "[{\"created_at\":\"2024-01-01T00:00:00.000+00:00\",\"id\":\"myConjurAccount:variable:db/password\","
+				+ "\"owner\":\"myConjurAccount:policy:db\",\"permissions\":[{\"privilege\":\"read\",\"role\":\"myConjurAccount:host:jenkins\"}],"
+				+ "\"annotations\":[{\"name\":\"jenkins_credential_username\",\"value\":\"admin\",\"policy\":\"myConjurAccount:policy:db\"},"
+				+ "{\"name\":\"Jenkins_Credential_Type\",\"value\":\"UsernameCredential\"}],"
+				+ "\"secrets\":[{\"version\":1,\"expires_at\":null}]},"
+				+ "{\"id\":\"myConjurAccount:variable:api/token\",\"annotations\":[]}]";
+		List<ConjurVariable> variables = ConjurAPI
+				.parseVariables(new ByteArrayInputStream(listing.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(2, variables.size());
+		assertEquals("db/password", variables.get(0).variablePath);
+		assertEquals("admin", variables.get(0).userName);
+		assertEquals("usernamecredential", variables.get(0).credentialType);
+		assertEquals("api/token", variables.get(1).variablePath);
+		assertNull(variables.get(1).userName);
+		assertNull(variables.get(1).credentialType);
+	}
+	@Test
 	public void globalConfigAndSimplifiedJWTDisabled() {
 		globalConfig.setEnableJWKS(true);
 		globalConfig.setEnableIdentityFormatFieldsFromToken(false);
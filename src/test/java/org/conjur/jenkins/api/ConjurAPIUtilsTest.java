@@ -0,0 +1,257 @@
+package org.conjur.jenkins.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.configuration.GlobalConjurConfiguration;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.CertificateCredentials;
+import com.cloudbees.plugins.credentials.common.StandardCertificateCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.common.UsernamePasswordCredentials;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Run;
+import hudson.model.Saveable;
+import hudson.model.User;
+import hudson.security.ACL;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import okhttp3.OkHttpClient;
+
+public class ConjurAPIUtilsTest {
+
+	private final AtomicInteger authentications = new AtomicInteger();
+
+	private final ConjurAPIUtils.CredentialsChangeListener listener = new ConjurAPIUtils.CredentialsChangeListener();
+
+	private final List<UsernamePasswordCredentials> rootCredentials = new ArrayList<UsernamePasswordCredentials>();
+
+	private final List<UsernamePasswordCredentials> itemCredentials = new ArrayList<UsernamePasswordCredentials>();
+
+	private final List<CertificateCredentials> certificates = new ArrayList<CertificateCredentials>();
+
+	@After
+	public void tearDown() {
+		ConjurAPIUtils.invalidateHttpClients();
+	}
+
+	@Test
+	public void jobAndUserSavesKeepCachedTokens() throws Exception {
+		assertEquals("token-1", cachedToken());
+
+		listener.onChange(mock(FreeStyleProject.class), xml("config.xml"));
+		listener.onChange(mock(User.class), xml("config.xml"));
+		listener.onChange(mock(Saveable.class), xml("queue.xml"));
+
+		assertEquals("token-1", cachedToken());
+		assertEquals(1, authentications.get());
+	}
+
+	@Test
+	public void credentialsStoreSaveDropsCachedTokens() throws Exception {
+		assertEquals("token-1", cachedToken());
+
+		listener.onChange(mock(SystemCredentialsProvider.class), xml("credentials.xml"));
+
+		assertEquals("token-2", cachedToken());
+	}
+
+	@Test
+	public void recognizesCredentialsStoresAndConjurConfiguration() {
+		assertTrue(ConjurAPIUtils.holdsCredentials(mock(SystemCredentialsProvider.class), xml("credentials.xml")));
+		assertTrue(ConjurAPIUtils.holdsCredentials(mock(GlobalConjurConfiguration.class), xml("conjur.xml")));
+		assertTrue(ConjurAPIUtils.holdsCredentials(mock(Folder.class), xml("config.xml")));
+		assertTrue(ConjurAPIUtils.holdsCredentials(mock(Saveable.class), xml("credentials.xml")));
+		assertFalse(ConjurAPIUtils.holdsCredentials(mock(FreeStyleProject.class), xml("config.xml")));
+		assertFalse(ConjurAPIUtils.holdsCredentials(mock(Saveable.class), null));
+	}
+
+	@Test
+	public void rootLoginCredentialsTakePrecedenceOverTheItems() {
+		StandardUsernamePasswordCredentials root = login("conjur-login");
+		StandardUsernamePasswordCredentials shadowing = login("conjur-login");
+		StandardUsernamePasswordCredentials folderOnly = login("folder-login");
+		rootCredentials.add(root);
+		itemCredentials.add(shadowing);
+		itemCredentials.add(folderOnly);
+		FreeStyleProject job = job("team/job");
+
+		try (MockedStatic<Jenkins> jenkins = mockStatic(Jenkins.class);
+				MockedStatic<CredentialsProvider> credentialsProvider = credentialsProvider(jenkins)) {
+			assertSame(root, ConjurAPIUtils.loginCredential("conjur-login", job));
+			assertSame(folderOnly, ConjurAPIUtils.loginCredential("folder-login", job));
+			assertNull(ConjurAPIUtils.loginCredential("folder-login", null));
+			// builds look up the credentials of their job
+			Run<?, ?> build = mock(Run.class);
+			doReturn(job).when(build).getParent();
+			assertSame(folderOnly, ConjurAPIUtils.loginCredential("folder-login", build));
+			credentialsProvider.verify(() -> CredentialsProvider.lookupCredentials(
+					eq(UsernamePasswordCredentials.class), any(Item.class), eq(ACL.SYSTEM), anyList()), times(1));
+		}
+	}
+
+	@Test
+	public void addedLoginCredentialIsFoundAfterTheStoreIsSaved() {
+		FreeStyleProject job = job("team/job");
+
+		try (MockedStatic<Jenkins> jenkins = mockStatic(Jenkins.class);
+				MockedStatic<CredentialsProvider> credentialsProvider = credentialsProvider(jenkins)) {
+			assertNull(ConjurAPIUtils.loginCredential("conjur-login", job));
+
+			StandardUsernamePasswordCredentials added = login("conjur-login");
+			itemCredentials.add(added);
+			assertNull("the missing credential is cached", ConjurAPIUtils.loginCredential("conjur-login", job));
+
+			listener.onChange(mock(Folder.class), xml("config.xml"));
+			assertSame(added, ConjurAPIUtils.loginCredential("conjur-login", job));
+		}
+	}
+
+	@Test
+	public void clientIsReusedForTheSameEndpointAndCertificate() throws Exception {
+		ConjurConfiguration configuration = certificateConfiguration("https://conjur.example.com");
+		certificates.add(certificate("conjur-cert", "first password"));
+
+		try (MockedStatic<Jenkins> jenkins = mockStatic(Jenkins.class);
+				MockedStatic<CredentialsProvider> credentialsProvider = credentialsProvider(jenkins)) {
+			OkHttpClient client = ConjurAPIUtils.getHttpClient(configuration);
+
+			assertNotSame(ConjurAPIUtils.getBaseClient(), client);
+			assertSame(client, ConjurAPIUtils.getHttpClient(configuration));
+			assertSame(client, ConjurAPIUtils.getHttpClient(certificateConfiguration("https://conjur.example.com")));
+
+			// a store save reloads the credential, an unchanged key store keeps the client
+			listener.onChange(mock(SystemCredentialsProvider.class), xml("credentials.xml"));
+			certificates.set(0, certificate("conjur-cert", "first password"));
+			assertSame(client, ConjurAPIUtils.getHttpClient(configuration));
+
+			assertNotSame(client, ConjurAPIUtils.getHttpClient(certificateConfiguration("https://other.example.com")));
+			credentialsProvider.verify(() -> CredentialsProvider.lookupCredentials(eq(CertificateCredentials.class),
+					any(ItemGroup.class), eq(ACL.SYSTEM), anyList()), times(2));
+		}
+	}
+
+	@Test
+	public void clientIsRebuiltWhenTheCertificateChanges() throws Exception {
+		ConjurConfiguration configuration = certificateConfiguration("https://conjur.example.com");
+		certificates.add(certificate("conjur-cert", "first password"));
+
+		try (MockedStatic<Jenkins> jenkins = mockStatic(Jenkins.class);
+				MockedStatic<CredentialsProvider> credentialsProvider = credentialsProvider(jenkins)) {
+			OkHttpClient client = ConjurAPIUtils.getHttpClient(configuration);
+
+			listener.onChange(mock(SystemCredentialsProvider.class), xml("credentials.xml"));
+			certificates.set(0, certificate("conjur-cert", "second password"));
+			OkHttpClient rebuilt = ConjurAPIUtils.getHttpClient(configuration);
+
+			assertNotSame(client, rebuilt);
+			assertNotSame(client.sslSocketFactory(), rebuilt.sslSocketFactory());
+			assertSame(rebuilt, ConjurAPIUtils.getHttpClient(configuration));
+			// the clients share the pool and dispatcher of the base client
+			assertSame(client.connectionPool(), rebuilt.connectionPool());
+			assertSame(client.dispatcher(), rebuilt.dispatcher());
+		}
+	}
+
+	@Test
+	public void certificateLookupMayComeBackThroughACredentialsProvider() throws Exception {
+		ConjurConfiguration configuration = certificateConfiguration("https://conjur.example.com");
+		StandardCertificateCredentials certificate = certificate("conjur-cert", "password");
+		AtomicInteger lookups = new AtomicInteger();
+
+		try (MockedStatic<Jenkins> jenkins = mockStatic(Jenkins.class);
+				MockedStatic<CredentialsProvider> credentialsProvider = credentialsProvider(jenkins)) {
+			// a provider resolving its own credentials needs the Conjur certificate too
+			credentialsProvider.when(() -> CredentialsProvider.lookupCredentials(eq(CertificateCredentials.class),
+					any(ItemGroup.class), eq(ACL.SYSTEM), anyList())).thenAnswer(invocation -> {
+						if (lookups.incrementAndGet() == 1) {
+							assertSame(certificate, ConjurAPIUtils.certificateFromConfiguration(configuration));
+						}
+						return Collections.singletonList(certificate);
+					});
+
+			assertSame(certificate, ConjurAPIUtils.certificateFromConfiguration(configuration));
+			assertSame(certificate, ConjurAPIUtils.certificateFromConfiguration(configuration));
+			assertEquals(2, lookups.get());
+		}
+	}
+
+	private MockedStatic<CredentialsProvider> credentialsProvider(MockedStatic<Jenkins> jenkins) {
+		Jenkins instance = mock(Jenkins.class);
+		jenkins.when(Jenkins::get).thenReturn(instance);
+		MockedStatic<CredentialsProvider> credentialsProvider = mockStatic(CredentialsProvider.class);
+		credentialsProvider.when(() -> CredentialsProvider.lookupCredentials(eq(UsernamePasswordCredentials.class),
+				eq((ItemGroup<?>) instance), eq(ACL.SYSTEM), anyList())).thenAnswer(invocation -> rootCredentials);
+		credentialsProvider.when(() -> CredentialsProvider.lookupCredentials(eq(UsernamePasswordCredentials.class),
+				any(Item.class), eq(ACL.SYSTEM), anyList())).thenAnswer(invocation -> itemCredentials);
+		credentialsProvider.when(() -> CredentialsProvider.lookupCredentials(eq(CertificateCredentials.class),
+				eq((ItemGroup<?>) instance), eq(ACL.SYSTEM), anyList())).thenAnswer(invocation -> certificates);
+		return credentialsProvider;
+	}
+
+	private static ConjurConfiguration certificateConfiguration(String applianceURL) {
+		ConjurConfiguration configuration = new ConjurConfiguration(applianceURL, "account");
+		configuration.setCertificateCredentialID("conjur-cert");
+		return configuration;
+	}
+
+	private static StandardCertificateCredentials certificate(String id, String password) throws Exception {
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		keyStore.load(null, null);
+		StandardCertificateCredentials certificate = mock(StandardCertificateCredentials.class);
+		when(certificate.getId()).thenReturn(id);
+		when(certificate.getKeyStore()).thenReturn(keyStore);
+		when(certificate.getPassword()).thenReturn(Secret.fromString(password));
+		return certificate;
+	}
+
+	private static StandardUsernamePasswordCredentials login(String id) {
+		StandardUsernamePasswordCredentials credential = mock(StandardUsernamePasswordCredentials.class);
+		when(credential.getId()).thenReturn(id);
+		return credential;
+	}
+
+	private static FreeStyleProject job(String fullName) {
+		FreeStyleProject job = mock(FreeStyleProject.class);
+		when(job.getFullName()).thenReturn(fullName);
+		return job;
+	}
+
+	private String cachedToken() throws Exception {
+		return AccessTokenCache.get("identity", 480L, () -> "token-" + authentications.incrementAndGet());
+	}
+
+	private static XmlFile xml(String name) {
+		return new XmlFile(new File(name));
+	}
+}
@@ -0,0 +1,121 @@
+package org.conjur.jenkins.conjursecrets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.credentials.ConjurCredentialProvider;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding.MultiEnvironment;
+import org.jenkinsci.plugins.credentialsbinding.impl.CredentialNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
+
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.StreamTaskListener;
+import jenkins.model.Jenkins;
+
+/**
+ * Credentials not found for the build are looked up in its folder and resolved
+ * in the context of the item their description names.
+ */
+public class ConjurSecretCredentialsBindingTest {
+
+	private final ConjurConfiguration configuration = new ConjurConfiguration("https://conjur.example.com", "account");
+
+	private Run<?, ?> build;
+
+	private MockedStatic<ConjurAPI> conjurAPI;
+
+	private MockedStatic<ConjurCredentialProvider> provider;
+
+	private MockedStatic<CredentialsProvider> credentialsProvider;
+
+	private MockedStatic<CredentialResolutionCache> resolutions;
+
+	private MockedStatic<Jenkins> jenkins;
+
+	@Before
+	public void setUp() {
+		build = mock(Run.class);
+		Job<?, ?> job = mock(Job.class);
+		ItemGroup<?> folder = mock(ItemGroup.class);
+		doReturn(job).when(build).getParent();
+		doReturn(folder).when(job).getParent();
+		when(job.getFullName()).thenReturn("team/job");
+
+		conjurAPI = mockStatic(ConjurAPI.class);
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(configuration);
+		conjurAPI.when(() -> ConjurAPI.getAuthorizationToken(any(), any(), any())).thenReturn("token");
+		conjurAPI.when(() -> ConjurAPI.getSecret(any(), any(), anyString(), anyString()))
+				.thenAnswer(invocation -> "value of " + invocation.getArgument(3));
+		provider = mockStatic(ConjurCredentialProvider.class);
+		provider.when(() -> ConjurCredentialProvider.findCredentialById(anyString(), eq(IdCredentials.class), any()))
+				.thenReturn(null);
+		credentialsProvider = mockStatic(CredentialsProvider.class);
+		resolutions = mockStatic(CredentialResolutionCache.class);
+		jenkins = mockStatic(Jenkins.class);
+		jenkins.when(Jenkins::get).thenReturn(mock(Jenkins.class));
+	}
+
+	@After
+	public void tearDown() {
+		jenkins.close();
+		resolutions.close();
+		credentialsProvider.close();
+		provider.close();
+		conjurAPI.close();
+	}
+
+	@Test
+	public void unresolvedItemFailsTheBinding() {
+		inFolder(new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, "db-password", "db/password",
+				"team/removed-job"));
+
+		CredentialNotFoundException e = assertThrows(CredentialNotFoundException.class,
+				() -> new ConjurSecretCredentialsBinding("db-password").bind(build, null, null, listener()));
+		assertTrue(e.getMessage(), e.getMessage().contains("team/removed-job"));
+	}
+
+	@Test
+	public void credentialOfAStoreIsResolvedInTheContextOfTheStore() throws Exception {
+		ConjurSecretCredentialsImpl credential = new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL,
+				"db-password", "db/password", "CyberArk Conjur Provided");
+		credential.setStoreContext(mock(ItemGroup.class));
+		inFolder(credential);
+
+		ConjurSecretCredentialsBinding binding = new ConjurSecretCredentialsBinding("db-password");
+		binding.setVariable("DB_PASSWORD");
+		MultiEnvironment environment = binding.bind(build, null, null, listener());
+
+		assertEquals("value of db/password", environment.getValues().get("DB_PASSWORD"));
+	}
+
+	private void inFolder(ConjurSecretCredentials credential) {
+		resolutions.when(() -> CredentialResolutionCache.resolve(eq("db-password"), any(), any()))
+				.thenReturn(credential);
+	}
+
+	private static StreamTaskListener listener() {
+		return new StreamTaskListener(new ByteArrayOutputStream(), StandardCharsets.UTF_8);
+	}
+}
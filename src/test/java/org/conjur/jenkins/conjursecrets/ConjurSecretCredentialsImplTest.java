@@ -0,0 +1,211 @@
+package org.conjur.jenkins.conjursecrets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+
+import hudson.model.Job;
+import hudson.model.ModelObject;
+import hudson.model.Run;
+import hudson.util.Secret;
+
+/**
+ * Builds of jobs with different Conjur configurations bind the same credential
+ * instances concurrently. Conjur is stubbed at the {@link ConjurAPI} level, so
+ * each binding goes through the request resolution of the credentials and
+ * answers reveal the configuration and context they were resolved with.
+ */
+public class ConjurSecretCredentialsImplTest {
+
+	private static final int JOBS = 40;
+
+	private static final int THREADS = 16;
+
+	private static final int ROUNDS = 150;
+
+	/** Configuration of each build, read only once the workers run */
+	private final Map<ModelObject, ConjurConfiguration> configurations = new IdentityHashMap<ModelObject, ConjurConfiguration>();
+
+	private final List<Run<?, ?>> builds = new ArrayList<Run<?, ?>>();
+
+	private final ConjurSecretCredentialsImpl secret = new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL,
+			"db-password", "db/password", "CyberArk Conjur Provided");
+
+	private final ConjurSecretUsernameCredentialsImpl username = new ConjurSecretUsernameCredentialsImpl(
+			CredentialsScope.GLOBAL, "username-app", "app", "db-password", null, "CyberArk Conjur Provided");
+
+	private final ConjurSecretUsernameSSHKeyCredentialsImpl sshKey = new ConjurSecretUsernameSSHKeyCredentialsImpl(
+			CredentialsScope.GLOBAL, "usernamesshkey-deploy", "git", "db-password", null, null,
+			"CyberArk Conjur Provided");
+
+	private final LegacyCredential legacy = new LegacyCredential();
+
+	@Before
+	public void setUp() {
+		for (int i = 0; i < JOBS; i++) {
+			Job<?, ?> job = mock(Job.class, withSettings().stubOnly());
+			when(job.getFullName()).thenReturn("team/job-" + i);
+			Run<?, ?> build = mock(Run.class, withSettings().stubOnly());
+			doReturn(job).when(build).getParent();
+			builds.add(build);
+			configurations.put(build, new ConjurConfiguration("https://conjur.example.com", "account-" + i));
+			// the username and SSH key credentials refer to the shared secret in every job
+			CredentialResolutionCache.resolve("db-password", build, () -> secret);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		CredentialResolutionCache.invalidateAll();
+	}
+
+	@Test(timeout = 120000)
+	public void concurrentBuildsResolveSharedCredentialsWithTheirOwnContext() throws Exception {
+		Queue<String> mismatches = new ConcurrentLinkedQueue<String>();
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<Throwable>();
+		CyclicBarrier start = new CyclicBarrier(THREADS);
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int t = 0; t < THREADS; t++) {
+			int offset = t;
+			Thread worker = new Thread(() -> {
+				// static mocks only apply to the thread that opened them
+				try (MockedStatic<ConjurAPI> conjurAPI = conjurAPI()) {
+					start.await();
+					for (int round = 0; round < ROUNDS; round++) {
+						Run<?, ?> build = builds.get((offset + round * 7) % JOBS);
+						String expected = expectedAccount(build);
+						String secretPath = expected + "|token-" + expected + "|db/password";
+						check(mismatches, "secret", secretPath,
+								secret.getSecret(ConjurSecretRequest.of(build)).getPlainText());
+						check(mismatches, "secret without configuration", secretPath,
+								secret.getSecret(ConjurSecretRequest.of(build, null)).getPlainText());
+						check(mismatches, "username", secretPath,
+								username.getSecret(ConjurSecretRequest.of(build)).getPlainText());
+						check(mismatches, "ssh key", secretPath, sshKey.getPrivateKey(ConjurSecretRequest.of(build)));
+						check(mismatches, "locked default", expected + "|" + expected,
+								legacy.getSecret(ConjurSecretRequest.of(build)).getPlainText());
+					}
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}, "build-" + t);
+			workers.add(worker);
+			worker.start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertTrue("failures: " + failures, failures.isEmpty());
+		assertTrue(mismatches.size() + " bindings resolved with another build's context or configuration, e.g. "
+				+ mismatches.peek(), mismatches.isEmpty());
+	}
+
+	@Test
+	public void configurationOfTheFolderWinsOverTheConfigurationOfTheRequest() {
+		Run<?, ?> build = builds.get(0);
+		ConjurConfiguration global = new ConjurConfiguration("https://conjur.example.com", "global");
+		try (MockedStatic<ConjurAPI> conjurAPI = conjurAPI()) {
+			assertEquals("account-0|token-account-0|db/password",
+					secret.getSecret(ConjurSecretRequest.of(build, global)).getPlainText());
+		}
+	}
+
+	private MockedStatic<ConjurAPI> conjurAPI() {
+		MockedStatic<ConjurAPI> conjurAPI = mockStatic(ConjurAPI.class);
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any()))
+				.thenAnswer(invocation -> configurations.get(invocation.getArgument(0)));
+		// the token tells which context authenticated, the secret which configuration fetched it
+		conjurAPI.when(() -> ConjurAPI.getAuthorizationToken(any(), any(), any()))
+				.thenAnswer(invocation -> "token-" + expectedAccount(invocation.getArgument(2)));
+		conjurAPI.when(() -> ConjurAPI.getSecret(any(), any(), anyString(), anyString())).thenAnswer(invocation -> {
+			ConjurConfiguration configuration = invocation.getArgument(1);
+			return configuration.getAccount() + "|" + invocation.getArgument(2) + "|" + invocation.getArgument(3);
+		});
+		return conjurAPI;
+	}
+
+	private String expectedAccount(ModelObject build) {
+		ConjurConfiguration configuration = configurations.get(build);
+		return configuration != null ? configuration.getAccount() : "no build";
+	}
+
+	private static void check(Queue<String> mismatches, String binding, String expected, String actual) {
+		if (!expected.equals(actual)) {
+			mismatches.add(binding + ": expected " + expected + " but was " + actual);
+		}
+	}
+
+	/**
+	 * Credential implementing only the context setters, resolved through the
+	 * locked default of {@link ConjurSecretCredentials#getSecret(ConjurSecretRequest)}
+	 */
+	private final class LegacyCredential extends BaseStandardCredentials implements ConjurSecretCredentials {
+
+		private static final long serialVersionUID = 1L;
+
+		private ConjurConfiguration configuration;
+
+		private ModelObject context;
+
+		LegacyCredential() {
+			super(CredentialsScope.GLOBAL, "legacy", "");
+		}
+
+		@Override
+		public String getDisplayName() {
+			return "legacy";
+		}
+
+		@Override
+		public String getNameTag() {
+			return "";
+		}
+
+		@Override
+		public Secret getSecret() {
+			ConjurConfiguration used = configuration;
+			// let other builds change the credential between reading the two fields
+			Thread.yield();
+			return Secret.fromString(used.getAccount() + "|" + expectedAccount(context));
+		}
+
+		@Override
+		public void setConjurConfiguration(ConjurConfiguration conjurConfiguration) {
+			this.configuration = conjurConfiguration;
+		}
+
+		@Override
+		public void setStoreContext(ModelObject storeContext) {
+		}
+
+		@Override
+		public void setContext(ModelObject context) {
+			this.context = context;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package org.conjur.jenkins.conjursecrets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.api.ConjurAPI.ConjurSecretsResult;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.credentials.ConjurCredentialProvider;
+import org.conjur.jenkins.conjursecrets.ConjurSecretsBinding.SecretVariable;
+import org.jenkinsci.plugins.credentialsbinding.MultiBinding.MultiEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+
+import hudson.AbortException;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.StreamTaskListener;
+
+public class ConjurSecretsBindingTest {
+
+	private final ConjurConfiguration configuration = new ConjurConfiguration("https://conjur.example.com", "account");
+
+	private final Map<String, ConjurSecretCredentials> stored = new HashMap<String, ConjurSecretCredentials>();
+
+	private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+
+	private Run<?, ?> build;
+
+	private Job<?, ?> job;
+
+	private MockedStatic<ConjurAPI> conjurAPI;
+
+	private MockedStatic<ConjurCredentialProvider> provider;
+
+	private MockedStatic<CredentialsProvider> credentialsProvider;
+
+	private MockedStatic<CredentialResolutionCache> resolutions;
+
+	@Before
+	public void setUp() {
+		build = mock(Run.class);
+		job = mock(Job.class);
+		doReturn(job).when(build).getParent();
+		when(job.getFullName()).thenReturn("folder/job");
+
+		conjurAPI = mockStatic(ConjurAPI.class);
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(configuration);
+		conjurAPI.when(() -> ConjurAPI.getAuthorizationTokenAsync(any(), any(), any()))
+				.thenReturn(CompletableFuture.completedFuture("token"));
+		conjurAPI.when(() -> ConjurAPI.getSecretsAsync(any(), any(), anyString(), any())).thenAnswer(invocation -> {
+			Collection<String> paths = invocation.getArgument(3);
+			ConjurSecretsResult result = new ConjurSecretsResult();
+			for (String path : paths) {
+				if (path.startsWith("missing/")) {
+					result.errors.put(path, new IOException("Secret not returned by Conjur for variable " + path));
+				} else {
+					result.secrets.put(path, "value of " + path);
+				}
+			}
+			return CompletableFuture.completedFuture(result);
+		});
+		provider = mockStatic(ConjurCredentialProvider.class);
+		provider.when(() -> ConjurCredentialProvider.findCredentialById(anyString(), eq(ConjurSecretCredentials.class),
+				any())).thenAnswer(invocation -> stored.get(invocation.getArgument(0)));
+		credentialsProvider = mockStatic(CredentialsProvider.class);
+		// IDs not found by the provider resolve to nothing unless stubbed
+		resolutions = mockStatic(CredentialResolutionCache.class);
+	}
+
+	@After
+	public void tearDown() {
+		resolutions.close();
+		credentialsProvider.close();
+		provider.close();
+		conjurAPI.close();
+	}
+
+	@Test
+	public void resolvesSeveralSecretsInOneBatch() throws Exception {
+		store("db-password", "db/password");
+		store("api-token", "api/token");
+		store("deploy-key", "deploy/key");
+
+		MultiEnvironment environment = binding("db-password", "DB_PASSWORD", "api-token", "API_TOKEN", "deploy-key",
+				"DEPLOY_KEY").bind(build, null, null, listener());
+
+		assertEquals("value of db/password", environment.getValues().get("DB_PASSWORD"));
+		assertEquals("value of api/token", environment.getValues().get("API_TOKEN"));
+		assertEquals("value of deploy/key", environment.getValues().get("DEPLOY_KEY"));
+		conjurAPI.verify(() -> ConjurAPI.getSecretsAsync(any(), eq(configuration), eq("token"),
+				argThat(paths -> paths.size() == 3)), times(1));
+		conjurAPI.verify(() -> ConjurAPI.getAuthorizationTokenAsync(any(), eq(configuration), eq(build)), times(1));
+	}
+
+	@Test
+	public void reportsEachFailedIdAndAborts() throws Exception {
+		store("db-password", "db/password");
+		store("gone", "missing/secret");
+
+		AbortException abort = assertThrows(AbortException.class, () -> binding("db-password", "DB_PASSWORD",
+				"unknown", "UNKNOWN", "gone", "GONE").bind(build, null, null, listener()));
+
+		String output = new String(log.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(output, output.contains("Failed to resolve Conjur secret 'unknown'"));
+		assertTrue(output, output.contains("Could not find credentials entry with ID 'unknown'"));
+		assertTrue(output, output.contains("Failed to resolve Conjur secret 'gone'"));
+		assertTrue(output, output.contains("Resolved 1 of 3 Conjur secrets"));
+		assertTrue(abort.getMessage(), abort.getMessage().contains("[unknown, gone]"));
+	}
+
+	@Test
+	public void resolvesFallbackCredentialsInTheContextOfTheJob() throws Exception {
+		ConjurSecretCredentials fallback = new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, "folder-secret",
+				"folder/secret", "CyberArk Conjur Provided");
+		resolutions.when(() -> CredentialResolutionCache.resolve(eq("folder-secret"), eq(job), any()))
+				.thenReturn(fallback);
+
+		MultiEnvironment environment = binding("folder-secret", "FOLDER_SECRET").bind(build, null, null, listener());
+
+		assertEquals("value of folder/secret", environment.getValues().get("FOLDER_SECRET"));
+		conjurAPI.verify(() -> ConjurAPI.getAuthorizationTokenAsync(any(), eq(configuration), eq(job)), times(1));
+	}
+
+	@Test
+	public void bindsOneCredentialToSeveralVariables() throws Exception {
+		store("db-password", "db/password");
+		store("api-token", "api/token");
+
+		MultiEnvironment environment = binding("db-password", "DB_PASSWORD", "api-token", "API_TOKEN", "db-password",
+				"DATABASE_PASSWORD").bind(build, null, null, listener());
+
+		assertEquals(3, environment.getValues().size());
+		assertEquals("value of db/password", environment.getValues().get("DB_PASSWORD"));
+		assertEquals("value of db/password", environment.getValues().get("DATABASE_PASSWORD"));
+		assertEquals("value of api/token", environment.getValues().get("API_TOKEN"));
+		conjurAPI.verify(() -> ConjurAPI.getSecretsAsync(any(), any(), anyString(), any()), times(1));
+	}
+
+	@Test
+	public void reportsTheIdOfItsFirstSecret() {
+		ConjurSecretsBinding binding = binding("db-password", "DB_PASSWORD", "api-token", "API_TOKEN");
+
+		assertEquals("db-password", binding.getCredentialsId());
+	}
+
+	@Test
+	public void masksEveryBoundVariable() {
+		ConjurSecretsBinding binding = binding("db-password", "DB_PASSWORD", "api-token", "API_TOKEN");
+
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("DB_PASSWORD", "API_TOKEN")), binding.variables());
+	}
+
+	@Test
+	public void rejectsEmptySecretList() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new ConjurSecretsBinding(Collections.<SecretVariable>emptyList()));
+		assertThrows(IllegalArgumentException.class, () -> new ConjurSecretsBinding(null));
+	}
+
+	private void store(String id, String variablePath) {
+		stored.put(id, new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, id, variablePath,
+				"CyberArk Conjur Provided"));
+	}
+
+	private StreamTaskListener listener() {
+		return new StreamTaskListener(log, StandardCharsets.UTF_8);
+	}
+
+	private static ConjurSecretsBinding binding(String... idsAndVariables) {
+		SecretVariable[] secrets = new SecretVariable[idsAndVariables.length / 2];
+		for (int i = 0; i < secrets.length; i++) {
+			secrets[i] = new SecretVariable(idsAndVariables[2 * i], idsAndVariables[2 * i + 1]);
+		}
+		return new ConjurSecretsBinding(Arrays.asList(secrets));
+	}
+}
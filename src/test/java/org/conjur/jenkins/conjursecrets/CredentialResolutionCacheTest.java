@@ -0,0 +1,98 @@
+package org.conjur.jenkins.conjursecrets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.conjur.jenkins.api.ConjurAPIUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+
+import hudson.XmlFile;
+import hudson.model.FreeStyleProject;
+import hudson.model.ModelObject;
+import hudson.model.Run;
+
+public class CredentialResolutionCacheTest {
+
+	/** Credentials visible per context full name */
+	private final Map<String, ConjurSecretCredentials> visible = new HashMap<String, ConjurSecretCredentials>();
+
+	private final AtomicInteger lookups = new AtomicInteger();
+
+	@After
+	public void tearDown() {
+		CredentialResolutionCache.invalidateAll();
+	}
+
+	@Test
+	public void missBecomesHitAfterACredentialIsAdded() {
+		FreeStyleProject job = job("team/job");
+		assertNull(resolve("db-password", job));
+		assertNull(resolve("db-password", job));
+		assertEquals("the miss is cached", 1, lookups.get());
+
+		ConjurSecretCredentials added = credential("db-password");
+		visible.put("team/job", added);
+		new ConjurAPIUtils.CredentialsChangeListener().onChange(mock(SystemCredentialsProvider.class),
+				new XmlFile(new File("credentials.xml")));
+
+		assertSame(added, resolve("db-password", job));
+		assertSame(added, resolve("db-password", job));
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void resolutionsAreScopedToTheirContext() {
+		FreeStyleProject job = job("team/job");
+		FreeStyleProject other = job("other/job");
+		ConjurSecretCredentials teamSecret = credential("db-password");
+		visible.put("team/job", teamSecret);
+
+		assertSame(teamSecret, resolve("db-password", job));
+		assertNull(resolve("db-password", other));
+		assertEquals(2, lookups.get());
+
+		// builds of a job share the resolutions of the job
+		assertSame(teamSecret, resolve("db-password", build(job)));
+		assertSame(teamSecret, resolve("db-password", build(job)));
+		assertEquals(3, lookups.get());
+	}
+
+	private ConjurSecretCredentials resolve(String id, ModelObject context) {
+		return CredentialResolutionCache.resolve(id, context, () -> {
+			lookups.incrementAndGet();
+			ModelObject item = context instanceof Run ? ((Run<?, ?>) context).getParent() : context;
+			ConjurSecretCredentials credential = visible.get(((FreeStyleProject) item).getFullName());
+			return credential != null && credential.getId().equals(id) ? credential : null;
+		});
+	}
+
+	private static ConjurSecretCredentials credential(String id) {
+		return new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, id, id.replace("-", "/"),
+				"CyberArk Conjur Provided");
+	}
+
+	private static FreeStyleProject job(String fullName) {
+		FreeStyleProject job = mock(FreeStyleProject.class);
+		when(job.getFullName()).thenReturn(fullName);
+		return job;
+	}
+
+	private static Run<?, ?> build(FreeStyleProject job) {
+		Run<?, ?> build = mock(Run.class);
+		doReturn(job).when(build).getParent();
+		return build;
+	}
+}
@@ -0,0 +1,106 @@
+package org.conjur.jenkins.conjursecrets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.exceptions.InvalidConjurSecretException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+
+import hudson.model.Job;
+import hudson.util.Secret;
+
+public class LinkedCredentialTest {
+
+	private final ConjurConfiguration configuration = new ConjurConfiguration("https://conjur.example.com", "account");
+
+	private final ConjurSecretCredentials target = mock(ConjurSecretCredentials.class);
+
+	private final AtomicInteger lookups = new AtomicInteger();
+
+	private final Job<?, ?> job = mock(Job.class);
+
+	private MockedStatic<ConjurAPI> conjurAPI;
+
+	private MockedStatic<CredentialResolutionCache> resolutions;
+
+	/** Credential the linked ID resolves to */
+	private ConjurSecretCredentials resolved = target;
+
+	@Before
+	public void setUp() {
+		when(target.getSecret(any())).thenReturn(Secret.fromString("db|password"));
+		// contexts have no configuration of their own
+		conjurAPI = mockStatic(ConjurAPI.class);
+		resolutions = mockStatic(CredentialResolutionCache.class, CALLS_REAL_METHODS);
+		resolutions.when(() -> CredentialResolutionCache.resolve(eq("db-password"), any(), any()))
+				.thenAnswer(invocation -> {
+					lookups.incrementAndGet();
+					return resolved;
+				});
+	}
+
+	@After
+	public void tearDown() {
+		resolutions.close();
+		conjurAPI.close();
+	}
+
+	@Test
+	public void linkedCredentialIsLookedUpThroughTheResolutionCache() {
+		LinkedCredential link = LinkedCredential.resolve("db-password", configuration, job);
+
+		assertSame(target, link.getCredential());
+		assertEquals("db|password", link.getSecret().getPlainText());
+		resolutions.verify(() -> CredentialResolutionCache.resolve(eq("db-password"), eq(job), any()));
+		assertEquals(1, lookups.get());
+	}
+
+	@Test
+	public void eachResolutionRequestsTheSecretForItsOwnContext() {
+		Job<?, ?> other = mock(Job.class);
+		ConjurConfiguration otherConfiguration = new ConjurConfiguration("https://conjur.example.com", "other");
+
+		LinkedCredential.resolve("db-password", configuration, job).getSecret();
+		LinkedCredential.resolve("db-password", otherConfiguration, other).getSecret();
+
+		verify(target).getSecret(argThat(request -> request.getContext() == job
+				&& request.getConfiguration() == configuration));
+		verify(target).getSecret(argThat(request -> request.getContext() == other
+				&& request.getConfiguration() == otherConfiguration));
+		assertEquals(2, lookups.get());
+	}
+
+	@Test
+	public void missingLinkedCredentialIsReported() {
+		resolved = null;
+		ConjurSecretUsernameSSHKeyCredentialsImpl sshKey = new ConjurSecretUsernameSSHKeyCredentialsImpl(
+				CredentialsScope.GLOBAL, "usernamesshkey-deploy", "git", "db-password", null, null,
+				"CyberArk Conjur Provided");
+
+		assertNull(LinkedCredential.resolve("db-password", configuration, job).getSecret());
+		InvalidConjurSecretException e = assertThrows(InvalidConjurSecretException.class,
+				() -> sshKey.getPrivateKey(ConjurSecretRequest.of(job)));
+		assertTrue(e.getMessage(), e.getMessage().contains("'db-password'"));
+		assertTrue(e.getMessage(), e.getMessage().contains("'usernamesshkey-deploy'"));
+	}
+}
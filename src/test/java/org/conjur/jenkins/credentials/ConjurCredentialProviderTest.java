@@ -0,0 +1,388 @@
+package org.conjur.jenkins.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.api.ConjurAPI.ConjurVariable;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.configuration.GlobalConjurConfiguration;
+import org.conjur.jenkins.conjursecrets.ConjurSecretCredentials;
+import org.conjur.jenkins.conjursecrets.ConjurSecretCredentialsImpl;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameSSHKeyCredentialsImpl;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.jenkins.plugins.sshcredentials.SSHUserPrivateKey;
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.StandardCertificateCredentials;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+
+import hudson.ExtensionList;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.ModelObject;
+import hudson.model.Run;
+import hudson.security.ACL;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+
+public class ConjurCredentialProviderTest {
+
+	private static final int FOLDERS = 100;
+
+	private static final int LOOKUPS = 5000;
+
+	private static final int THREADS = 32;
+
+	/** Same shape as the AWS Credentials plugin's type */
+	interface AmazonWebServicesCredentials extends StandardCredentials {
+	}
+
+	/** Same shape as the GitHub Branch Source plugin's type */
+	abstract static class GitHubAppCredentials extends BaseStandardCredentials
+			implements StandardUsernamePasswordCredentials {
+		private static final long serialVersionUID = 1L;
+
+		GitHubAppCredentials() {
+			super(CredentialsScope.GLOBAL, "github-app", "");
+		}
+	}
+
+	@After
+	public void tearDown() {
+		ConjurCredentialStore.invalidateRegistryKeys();
+		CredentialsSupplier.invalidateListings();
+	}
+
+	@Test
+	public void lookupsOfOtherPluginsTypesNeverReachTheStore() {
+		ConjurCredentialProvider provider = spy(new ConjurCredentialProvider());
+		ItemGroup<?> folder = mock(ItemGroup.class);
+		Item job = mock(Item.class);
+
+		assertTrue(provider.getCredentials(GitHubAppCredentials.class, folder, ACL.SYSTEM).isEmpty());
+		assertTrue(provider.getCredentials(AmazonWebServicesCredentials.class, folder, ACL.SYSTEM).isEmpty());
+		assertTrue(provider.getCredentials(GitHubAppCredentials.class, job, ACL.SYSTEM,
+				Collections.<DomainRequirement>emptyList()).isEmpty());
+		assertTrue(provider.getCredentials(AmazonWebServicesCredentials.class, job, ACL.SYSTEM,
+				Collections.<DomainRequirement>emptyList()).isEmpty());
+
+		verify(provider, never()).getStore(any());
+		verify(provider, never()).getCredentialSupplier(any());
+	}
+
+	@Test
+	public void certificateTypesAreNotSupported() {
+		assertFalse(ConjurCredentialProvider.isSupportedType(StandardCertificateCredentials.class));
+		assertTrue(ConjurCredentialProvider.isSupportedType(ConjurSecretCredentials.class));
+		assertTrue(ConjurCredentialProvider.isSupportedType(StandardCredentials.class));
+	}
+
+	@Test
+	public void broadLookupsLoadTheListingWhenItIsNotLoadedYet() {
+		AtomicInteger listings = new AtomicInteger();
+		ConjurSecretUsernameSSHKeyCredentialsImpl deployKey = new ConjurSecretUsernameSSHKeyCredentialsImpl(
+				CredentialsScope.GLOBAL, "deploy-key", "git", "deploy/key", null, null, "CyberArk Conjur Provided");
+		Collection<StandardCredentials> snapshot = CredentialsSnapshot.of(Arrays.asList(
+				new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, "db-password", "db/password",
+						"CyberArk Conjur Provided"),
+				deployKey));
+		Supplier<Collection<StandardCredentials>> supplier = CustomSuppliers.refreshAhead(() -> {
+			listings.incrementAndGet();
+			return snapshot;
+		}, () -> Duration.ofMinutes(2));
+		ConjurCredentialProvider provider = spy(new ConjurCredentialProvider());
+		doReturn(supplier).when(provider).getCredentialSupplier(any());
+		ItemGroup<?> folder = mock(ItemGroup.class);
+
+		// e.g. an sshUserPrivateKey binding right after a restart
+		assertEquals(Collections.singletonList(deployKey),
+				provider.getCredentials(SSHUserPrivateKey.class, folder, ACL.SYSTEM));
+		assertEquals(1, listings.get());
+
+		assertEquals(2, provider.getCredentials(StandardCredentials.class, folder, ACL.SYSTEM).size());
+		assertEquals(1, provider.getCredentials(ConjurSecretCredentials.class, folder, ACL.SYSTEM).size());
+		assertEquals(1, listings.get());
+	}
+
+	@Test
+	public void jenkinsStoredCredentialsTakePrecedence() {
+		ConjurSecretCredentials stored = credential("db-password", "stored/password");
+		try (MockedStatic<CredentialsProvider> credentialsProvider = mockStatic(CredentialsProvider.class);
+				MockedStatic<ExtensionList> extensions = mockStatic(ExtensionList.class)) {
+			credentialsProvider.when(() -> CredentialsProvider.findCredentialById(eq("db-password"),
+					eq(ConjurSecretCredentials.class), any(Run.class))).thenReturn(stored);
+
+			assertSame(stored, ConjurCredentialProvider.findCredentialById("db-password",
+					ConjurSecretCredentials.class, build()));
+			extensions.verify(() -> ExtensionList.lookupSingleton(ConjurCredentialProvider.class), never());
+		}
+	}
+
+	@Test
+	public void findsConjurCredentialsInTheLoadedListing() {
+		ConjurSecretCredentials listed = credential("db-password", "db/password");
+		Supplier<Collection<StandardCredentials>> supplier = CustomSuppliers.refreshAhead(
+				() -> CredentialsSnapshot.of(Collections.singletonList(listed)), () -> Duration.ofMinutes(2));
+		supplier.get();
+		try (MockedStatic<CredentialsProvider> credentialsProvider = mockStatic(CredentialsProvider.class);
+				MockedStatic<ExtensionList> extensions = mockStatic(ExtensionList.class);
+				MockedStatic<ConjurAPI> conjurAPI = mockStatic(ConjurAPI.class)) {
+			extensions.when(() -> ExtensionList.lookupSingleton(ConjurCredentialProvider.class))
+					.thenReturn(providerWith(supplier));
+
+			Run<?, ?> build = build();
+			assertSame(listed, ConjurCredentialProvider.findCredentialById("db-password",
+					ConjurSecretCredentials.class, build));
+			credentialsProvider.verify(() -> CredentialsProvider.track(build, listed));
+			// the loaded listing answers misses too
+			assertNull(ConjurCredentialProvider.findCredentialById("unknown-id", ConjurSecretCredentials.class,
+					build));
+			conjurAPI.verifyNoInteractions();
+		}
+	}
+
+	@Test
+	public void fetchesTheVariableOfTheIdWithoutListing() {
+		AtomicInteger listings = new AtomicInteger();
+		Supplier<Collection<StandardCredentials>> supplier = CustomSuppliers.refreshAhead(() -> {
+			listings.incrementAndGet();
+			return CredentialsSnapshot.of(null);
+		}, () -> Duration.ofMinutes(2));
+		try (MockedStatic<CredentialsProvider> credentialsProvider = mockStatic(CredentialsProvider.class);
+				MockedStatic<ExtensionList> extensions = mockStatic(ExtensionList.class);
+				MockedStatic<ConjurAPI> conjurAPI = conjurAPI("db/password")) {
+			extensions.when(() -> ExtensionList.lookupSingleton(ConjurCredentialProvider.class))
+					.thenReturn(providerWith(supplier));
+
+			ConjurSecretCredentials credential = ConjurCredentialProvider.findCredentialById("db-password",
+					ConjurSecretCredentials.class, build());
+
+			assertEquals("db/password", ((ConjurSecretCredentialsImpl) credential).getVariablePath());
+			conjurAPI.verify(() -> ConjurAPI.getVariablesAsync(any(), any(), anyString()), never());
+			assertEquals(0, listings.get());
+
+			// the next bindings reuse the resolution, misses included
+			assertSame(credential, ConjurCredentialProvider.findCredentialById("db-password",
+					ConjurSecretCredentials.class, build()));
+			assertNull(ConjurCredentialProvider.findCredentialById("missing", ConjurSecretCredentials.class,
+					build()));
+			assertNull(ConjurCredentialProvider.findCredentialById("missing", ConjurSecretCredentials.class,
+					build()));
+			conjurAPI.verify(() -> ConjurAPI.getVariable(any(), any(), anyString(), eq("db/password")), times(1));
+			conjurAPI.verify(() -> ConjurAPI.getVariable(any(), any(), anyString(), eq("missing")), times(1));
+		}
+	}
+
+	@Test
+	public void ambiguousDashedIdsFallBackToTheListing() {
+		ConjurSecretCredentials listed = credential("my-app-password", "my-app/password");
+		Supplier<Collection<StandardCredentials>> supplier = CustomSuppliers.refreshAhead(
+				() -> CredentialsSnapshot.of(null), () -> Duration.ofMinutes(2));
+		try (MockedStatic<CredentialsProvider> credentialsProvider = mockStatic(CredentialsProvider.class);
+				MockedStatic<ExtensionList> extensions = mockStatic(ExtensionList.class);
+				MockedStatic<ConjurAPI> conjurAPI = conjurAPI("my-app/password")) {
+			extensions.when(() -> ExtensionList.lookupSingleton(ConjurCredentialProvider.class))
+					.thenReturn(providerWith(supplier));
+			// the other providers first, then every provider including the Conjur listing
+			credentialsProvider.when(() -> CredentialsProvider.findCredentialById(eq("my-app-password"),
+					eq(ConjurSecretCredentials.class), any(Run.class))).thenReturn(null, listed);
+
+			assertSame(listed, ConjurCredentialProvider.findCredentialById("my-app-password",
+					ConjurSecretCredentials.class, build()));
+			conjurAPI.verify(() -> ConjurAPI.getVariable(any(), any(), anyString(), eq("my/app/password")));
+			conjurAPI.verify(() -> ConjurAPI.getVariable(any(), any(), anyString(), eq("my-app-password")));
+			credentialsProvider.verify(() -> CredentialsProvider.findCredentialById(eq("my-app-password"),
+					eq(ConjurSecretCredentials.class), any(Run.class)), times(2));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void buildsUseTheStoreAndSupplierOfTheirJob() {
+		Job<?, ?> job = mock(Job.class);
+		when(job.getFullName()).thenReturn("team/app");
+		Run<?, ?> build = mock(Run.class);
+		doReturn(job).when(build).getParent();
+		GlobalConjurConfiguration globalConfig = mock(GlobalConjurConfiguration.class);
+		when(globalConfig.getEnableJWKS()).thenReturn(true);
+		when(globalConfig.getEnableContextAwareCredentialStore()).thenReturn(true);
+		ExtensionList<GlobalConfiguration> extensions = mock(ExtensionList.class);
+		when(extensions.get(GlobalConjurConfiguration.class)).thenReturn(globalConfig);
+		try (MockedStatic<GlobalConfiguration> globalConfiguration = mockStatic(GlobalConfiguration.class);
+				MockedStatic<Jenkins> jenkins = mockStatic(Jenkins.class);
+				MockedStatic<ConjurAPI> conjurAPI = mockStatic(ConjurAPI.class)) {
+			globalConfiguration.when(GlobalConfiguration::all).thenReturn(extensions);
+			jenkins.when(Jenkins::get).thenReturn(mock(Jenkins.class));
+			conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any()))
+					.thenReturn(new ConjurConfiguration("https://conjur.example.com", "account"));
+			String key = ConjurCredentialStore.registryKey(job);
+			ConjurCredentialStore store = mock(ConjurCredentialStore.class);
+			ConjurCredentialStore.getAllStores().put(key, store);
+			ConjurCredentialProvider provider = new ConjurCredentialProvider();
+
+			assertSame(job, provider.storeContext(build));
+			assertEquals(key, ConjurCredentialStore.registryKey(build));
+			assertSame(store, provider.getStore(build));
+			Supplier<Collection<StandardCredentials>> supplier = provider.getCredentialSupplier(build);
+			assertSame(supplier, provider.getCredentialSupplier(job));
+			assertSame(supplier, ConjurCredentialProvider.getAllCredentialSuppliers().get(key));
+			assertEquals(Collections.singleton(key), ConjurCredentialStore.getAllStores().keySet());
+		} finally {
+			ConjurCredentialStore.getAllStores().clear();
+			ConjurCredentialProvider.getAllCredentialSuppliers().clear();
+			ConjurCredentialStore.invalidateRegistryKeys();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void concurrentLookupsGoThroughTheRegistryOfEachFolder() throws Exception {
+		List<ItemGroup<?>> folders = new ArrayList<ItemGroup<?>>();
+		Map<ModelObject, AtomicInteger> builds = new IdentityHashMap<ModelObject, AtomicInteger>();
+		Map<ModelObject, AtomicInteger> listings = new IdentityHashMap<ModelObject, AtomicInteger>();
+		try (MockedStatic<ConjurAPI> conjurAPI = mockStatic(ConjurAPI.class)) {
+			conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(
+					new ConjurConfiguration("https://conjur.example.com", "account"));
+			// registry keys are derived here once, the lookups below read them from the registry
+			for (int i = 0; i < FOLDERS; i++) {
+				ItemGroup<?> folder = mock(ItemGroup.class, withSettings().stubOnly());
+				when(folder.getFullName()).thenReturn("folder-" + i);
+				ConjurCredentialStore.getAllStores().put(ConjurCredentialStore.registryKey(folder),
+						mock(ConjurCredentialStore.class));
+				folders.add(folder);
+				builds.put(folder, new AtomicInteger());
+				listings.put(folder, new AtomicInteger());
+			}
+		}
+		ConjurCredentialProvider provider = new ConjurCredentialProvider() {
+			@Override
+			ModelObject storeContext(ModelObject object) {
+				// context aware store enabled, without a Jenkins instance
+				return object;
+			}
+
+			@Override
+			Supplier<Collection<StandardCredentials>> createCredentialSupplier(ModelObject context) {
+				builds.get(context).incrementAndGet();
+				String name = ((ItemGroup<?>) context).getFullName();
+				Collection<StandardCredentials> snapshot = CredentialsSnapshot.of(Collections.singletonList(
+						new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, name, name.replace("-", "/"),
+								"CyberArk Conjur Provided")));
+				return CustomSuppliers.refreshAhead(() -> {
+					listings.get(context).incrementAndGet();
+					return snapshot;
+				}, () -> Duration.ofMinutes(2));
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Boolean>> lookups = new ArrayList<Future<Boolean>>();
+			for (int i = 0; i < LOOKUPS; i++) {
+				int index = i % FOLDERS;
+				lookups.add(executor.submit(() -> {
+					List<ConjurSecretCredentials> credentials = provider.getCredentials(ConjurSecretCredentials.class,
+							folders.get(index), ACL.SYSTEM);
+					return credentials.size() == 1 && ("folder-" + index).equals(credentials.get(0).getId());
+				}));
+			}
+			int foreign = 0;
+			for (Future<Boolean> lookup : lookups) {
+				if (!lookup.get()) {
+					foreign++;
+				}
+			}
+
+			assertEquals("lookups that did not return their folder's credentials", 0, foreign);
+			assertEquals(FOLDERS, ConjurCredentialProvider.getAllCredentialSuppliers().size());
+		} finally {
+			executor.shutdownNow();
+			ConjurCredentialStore.getAllStores().clear();
+			ConjurCredentialProvider.getAllCredentialSuppliers().clear();
+			ConjurCredentialStore.invalidateRegistryKeys();
+		}
+		for (ItemGroup<?> folder : folders) {
+			assertEquals("suppliers built for " + folder.getFullName(), 1, builds.get(folder).get());
+			assertEquals("listings of " + folder.getFullName(), 1, listings.get(folder).get());
+		}
+	}
+
+	private static ConjurSecretCredentials credential(String id, String variablePath) {
+		return new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL, id, variablePath, "CyberArk Conjur Provided");
+	}
+
+	private static Run<?, ?> build() {
+		Job<?, ?> job = mock(Job.class);
+		when(job.getFullName()).thenReturn("team/job");
+		Run<?, ?> build = mock(Run.class);
+		doReturn(job).when(build).getParent();
+		return build;
+	}
+
+	private static ConjurCredentialProvider providerWith(Supplier<Collection<StandardCredentials>> supplier) {
+		return new ConjurCredentialProvider() {
+			@Override
+			ModelObject storeContext(ModelObject object) {
+				return object;
+			}
+
+			@Override
+			Supplier<Collection<StandardCredentials>> getCredentialSupplier(ModelObject object) {
+				return supplier;
+			}
+		};
+	}
+
+	/** Conjur answering single variable requests for the existing path only */
+	private static MockedStatic<ConjurAPI> conjurAPI(String existingPath) {
+		MockedStatic<ConjurAPI> conjurAPI = mockStatic(ConjurAPI.class);
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any()))
+				.thenReturn(new ConjurConfiguration("https://conjur.example.com", "account"));
+		conjurAPI.when(() -> ConjurAPI.getAuthorizationToken(any(), any(), any())).thenReturn("token");
+		conjurAPI.when(() -> ConjurAPI.getVariable(any(), any(), anyString(), anyString())).thenAnswer(invocation -> {
+			if (!existingPath.equals(invocation.getArgument(3))) {
+				return null;
+			}
+			ConjurVariable variable = new ConjurVariable();
+			variable.variablePath = existingPath;
+			return variable;
+		});
+		return conjurAPI;
+	}
+}
@@ -0,0 +1,169 @@
+package org.conjur.jenkins.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Item;
+
+public class ConjurCredentialStoreTest {
+
+	private final ConjurConfiguration configuration = new ConjurConfiguration("https://conjur.example.com", "account");
+
+	private final ConjurCredentialProvider.RegistryItemListener listener = new ConjurCredentialProvider.RegistryItemListener();
+
+	private MockedStatic<ConjurAPI> conjurAPI;
+
+	@Before
+	public void setUp() {
+		conjurAPI = mockStatic(ConjurAPI.class);
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(configuration);
+	}
+
+	@After
+	public void tearDown() {
+		ConjurCredentialStore.getAllStores().clear();
+		ConjurCredentialProvider.getAllCredentialSuppliers().clear();
+		ConjurCredentialStore.invalidateRegistryKeys();
+		conjurAPI.close();
+	}
+
+	@Test
+	public void registryKeysAreDerivedOncePerItem() {
+		Item job = item(FreeStyleProject.class, "team/job");
+
+		String key = ConjurCredentialStore.registryKey(job);
+
+		assertEquals("team/job|https://conjur.example.com|account|null|null", key);
+		assertEquals(key, ConjurCredentialStore.registryKey(job));
+		conjurAPI.verify(() -> ConjurAPI.getConfigurationFromContext(any(), any()), times(1));
+
+		ConjurCredentialStore.invalidateRegistryKeys();
+		ConjurConfiguration moved = new ConjurConfiguration("https://conjur.example.com", "other");
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(moved);
+
+		assertNotEquals(key, ConjurCredentialStore.registryKey(job));
+	}
+
+	@Test
+	public void registryDropsEntriesBeyondItsSize() {
+		Cache<String, String> registry = ConjurCredentialStore.newRegistry(10, 60, Ticker.systemTicker());
+
+		for (int i = 0; i < 100; i++) {
+			registry.put("job-" + i, "store-" + i);
+		}
+		registry.cleanUp();
+
+		assertTrue("size " + registry.size(), registry.size() <= 10);
+		assertNotNull(registry.getIfPresent("job-99"));
+	}
+
+	@Test
+	public void registryDropsIdleEntries() {
+		AtomicLong nanos = new AtomicLong();
+		Cache<String, String> registry = ConjurCredentialStore.newRegistry(10, 60, new Ticker() {
+			@Override
+			public long read() {
+				return nanos.get();
+			}
+		});
+		registry.put("idle", "store");
+		registry.put("used", "store");
+
+		nanos.addAndGet(TimeUnit.MINUTES.toNanos(45));
+		assertNotNull(registry.getIfPresent("used"));
+		nanos.addAndGet(TimeUnit.MINUTES.toNanos(45));
+
+		assertNull(registry.getIfPresent("idle"));
+		assertNotNull(registry.getIfPresent("used"));
+	}
+
+	@Test
+	public void deletingAFolderEvictsItAndItsItems() {
+		Folder team = item(Folder.class, "team");
+		String teamKey = register(team);
+		String jobKey = register(item(FreeStyleProject.class, "team/job"));
+		String siblingKey = register(item(Folder.class, "team-2"));
+
+		listener.onDeleted(team);
+
+		assertFalse(ConjurCredentialStore.getAllStores().containsKey(teamKey));
+		assertFalse(ConjurCredentialStore.getAllStores().containsKey(jobKey));
+		assertFalse(ConjurCredentialProvider.getAllCredentialSuppliers().containsKey(jobKey));
+		assertTrue(ConjurCredentialStore.getAllStores().containsKey(siblingKey));
+		assertTrue(ConjurCredentialProvider.getAllCredentialSuppliers().containsKey(siblingKey));
+	}
+
+	@Test
+	public void renamingAnItemEvictsItsOldEntries() {
+		Item job = item(FreeStyleProject.class, "team/job");
+		String oldKey = register(job);
+		String otherKey = register(item(FreeStyleProject.class, "team/job-2"));
+
+		when(job.getFullName()).thenReturn("team/renamed");
+		listener.onLocationChanged(job, "team/job", "team/renamed");
+
+		assertFalse(ConjurCredentialStore.getAllStores().containsKey(oldKey));
+		assertFalse(ConjurCredentialProvider.getAllCredentialSuppliers().containsKey(oldKey));
+		assertTrue(ConjurCredentialStore.getAllStores().containsKey(otherKey));
+		assertEquals("team/renamed|https://conjur.example.com|account|null|null",
+				ConjurCredentialStore.registryKey(job));
+	}
+
+	@Test
+	public void deletingAnItemEvictsEntriesOfItsFormerConfigurations() {
+		Item job = item(FreeStyleProject.class, "team/job");
+		String formerKey = register(job);
+		ConjurCredentialStore.invalidateRegistryKeys();
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any()))
+				.thenReturn(new ConjurConfiguration("https://conjur.example.com", "other"));
+		String currentKey = register(job);
+		assertNotEquals(formerKey, currentKey);
+
+		listener.onDeleted(job);
+
+		assertTrue(ConjurCredentialStore.getAllStores().isEmpty());
+		assertTrue(ConjurCredentialProvider.getAllCredentialSuppliers().isEmpty());
+	}
+
+	private static String register(Item item) {
+		String key = ConjurCredentialStore.registryKey(item);
+		ConjurCredentialStore.getAllStores().put(key, mock(ConjurCredentialStore.class));
+		Supplier<Collection<StandardCredentials>> supplier = Collections::emptyList;
+		ConjurCredentialProvider.getAllCredentialSuppliers().put(key, supplier);
+		return key;
+	}
+
+	private static <T extends Item> T item(Class<T> type, String fullName) {
+		T item = mock(type);
+		when(item.getFullName()).thenReturn(fullName);
+		return item;
+	}
+}
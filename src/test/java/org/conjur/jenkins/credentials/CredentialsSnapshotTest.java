@@ -0,0 +1,108 @@
+package org.conjur.jenkins.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.conjur.jenkins.conjursecrets.ConjurSecretCredentials;
+import org.conjur.jenkins.conjursecrets.ConjurSecretCredentialsImpl;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentials;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentialsImpl;
+import org.junit.Test;
+
+import com.cloudbees.plugins.credentials.Credentials;
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.common.IdCredentials;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.impl.BaseStandardCredentials;
+
+public class CredentialsSnapshotTest {
+
+	private final ConjurSecretCredentialsImpl secret = new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL,
+			"db-password", "db/password", "CyberArk Conjur Provided");
+
+	private final ConjurSecretUsernameCredentialsImpl login = new ConjurSecretUsernameCredentialsImpl(
+			CredentialsScope.GLOBAL, "app-login", "app", "app/login", null, "CyberArk Conjur Provided");
+
+	@Test
+	public void indexesCredentialsByTheirInterfacesAndSuperclasses() {
+		CredentialsSnapshot snapshot = CredentialsSnapshot.of(Arrays.asList(secret, login));
+
+		assertEquals(Arrays.asList(secret, login), snapshot.ofType(ConjurSecretCredentials.class));
+		assertEquals(Arrays.asList(secret, login), snapshot.ofType(StandardCredentials.class));
+		assertEquals(Arrays.asList(secret, login), snapshot.ofType(IdCredentials.class));
+		assertEquals(Arrays.asList(secret, login), snapshot.ofType(Credentials.class));
+		assertEquals(Arrays.asList(secret, login), snapshot.ofType(BaseStandardCredentials.class));
+		assertEquals(Arrays.asList(secret, login), snapshot.ofType(Object.class));
+		assertEquals(Collections.singletonList(login), snapshot.ofType(ConjurSecretUsernameCredentials.class));
+		assertEquals(Collections.singletonList(login), snapshot.ofType(StandardUsernamePasswordCredentials.class));
+		assertEquals(Collections.singletonList(secret), snapshot.ofType(ConjurSecretCredentialsImpl.class));
+		assertTrue(snapshot.ofType(String.class).isEmpty());
+	}
+
+	@Test
+	public void lookupsShareOneUnmodifiableList() {
+		CredentialsSnapshot snapshot = CredentialsSnapshot.of(Arrays.asList(secret, login));
+
+		List<ConjurSecretCredentials> credentials = snapshot.ofType(ConjurSecretCredentials.class);
+		assertSame(credentials, snapshot.ofType(ConjurSecretCredentials.class));
+		assertThrows(UnsupportedOperationException.class, () -> credentials.add(secret));
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.ofType(String.class).add("other"));
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.iterator().remove());
+	}
+
+	@Test
+	public void isNotAffectedByChangesOfTheListing() {
+		List<StandardCredentials> listing = new ArrayList<StandardCredentials>(Arrays.asList(secret));
+		CredentialsSnapshot snapshot = CredentialsSnapshot.of(listing);
+
+		listing.add(login);
+
+		assertEquals(1, snapshot.size());
+		assertNull(snapshot.getById("app-login"));
+	}
+
+	@Test
+	public void firstCredentialWithAnIdWins() {
+		ConjurSecretCredentialsImpl duplicate = new ConjurSecretCredentialsImpl(CredentialsScope.GLOBAL,
+				"db-password", "db-password", "CyberArk Conjur Provided");
+		CredentialsSnapshot snapshot = CredentialsSnapshot.of(Arrays.asList(secret, duplicate, login));
+
+		assertSame(secret, snapshot.getById("db-password"));
+		assertSame(login, snapshot.getById("app-login"));
+		assertNull(snapshot.getById("missing"));
+		assertEquals("duplicates are still listed", 3, snapshot.size());
+	}
+
+	@Test
+	public void countsTheDifferencesOfARefresh() {
+		CredentialsSnapshot listed = CredentialsSnapshot.of(Arrays.asList(secret, login));
+		assertEquals(2, listed.getAdded());
+		assertEquals(0, listed.getChanged());
+		assertEquals(0, listed.getRemoved());
+
+		CredentialsSnapshot refreshed = CredentialsSnapshot.refreshed(Collections.singletonList(login), 1, 2, 3);
+		assertEquals(1, refreshed.getAdded());
+		assertEquals(2, refreshed.getChanged());
+		assertEquals(3, refreshed.getRemoved());
+		assertSame(login, refreshed.getById("app-login"));
+	}
+
+	@Test
+	public void emptyListingsShareOneSnapshot() {
+		assertSame(CredentialsSnapshot.of(null), CredentialsSnapshot.of(Collections.emptyList()));
+		assertTrue(CredentialsSnapshot.of(null).isEmpty());
+		assertEquals(0, CredentialsSnapshot.of(null).getAdded());
+
+		CredentialsSnapshot snapshot = CredentialsSnapshot.of(Arrays.asList(secret));
+		assertSame("a snapshot is not copied", snapshot, CredentialsSnapshot.of(snapshot));
+	}
+}
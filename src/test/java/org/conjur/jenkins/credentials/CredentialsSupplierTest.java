@@ -0,0 +1,277 @@
+package org.conjur.jenkins.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.conjur.jenkins.api.AccessTokenCache;
+import org.conjur.jenkins.api.ConjurAPI;
+import org.conjur.jenkins.api.ConjurAPI.ConjurVariable;
+import org.conjur.jenkins.configuration.ConjurConfiguration;
+import org.conjur.jenkins.conjursecrets.ConjurSecretCredentialsImpl;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameCredentialsImpl;
+import org.conjur.jenkins.conjursecrets.ConjurSecretUsernameSSHKeyCredentialsImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+import com.cloudbees.hudson.plugins.folder.Folder;
+import com.cloudbees.plugins.credentials.common.StandardCredentials;
+
+import hudson.ExtensionList;
+import hudson.model.FreeStyleProject;
+import hudson.util.FormValidation;
+import jenkins.model.GlobalConfiguration;
+import jenkins.model.Jenkins;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class CredentialsSupplierTest {
+
+	private static final String PROD_APP = "https://conjur|authn|account|host/prod-app|prod-credential|aGFzaC1h";
+
+	private static final String IMPOSTOR = "https://conjur|authn|account|host/prod-app|folder-credential|aGFzaC1i";
+
+	private final ConjurConfiguration configuration = new ConjurConfiguration("https://conjur", "account");
+
+	private final List<ConjurVariable> variables = new ArrayList<ConjurVariable>();
+
+	private FreeStyleProject job;
+
+	private MockedStatic<Jenkins> jenkins;
+
+	private MockedStatic<ConjurAPI> conjurAPI;
+
+	private int logins;
+
+	@Before
+	public void setUp() {
+		job = mock(FreeStyleProject.class);
+		when(job.getDisplayName()).thenReturn("job");
+		Jenkins instance = mock(Jenkins.class);
+		doReturn(mock(Folder.class)).when(instance).getItemByFullName(anyString());
+		jenkins = mockStatic(Jenkins.class);
+		jenkins.when(Jenkins::get).thenReturn(instance);
+		conjurAPI = mockStatic(ConjurAPI.class);
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(configuration);
+		// a token per refresh, so no refresh reuses the listing shared by the previous one
+		conjurAPI.when(() -> ConjurAPI.getAuthorizationToken(any(), any(), any()))
+				.thenAnswer(invocation -> "token-" + ++logins);
+		conjurAPI.when(() -> ConjurAPI.getVariablesAsync(any(), any(), anyString()))
+				.thenAnswer(invocation -> CompletableFuture.completedFuture(new ArrayList<ConjurVariable>(variables)));
+	}
+
+	@After
+	public void tearDown() {
+		conjurAPI.close();
+		jenkins.close();
+		AccessTokenCache.invalidateAll();
+		CredentialsSupplier.invalidateListings();
+	}
+
+	@Test
+	public void listingsAreNotSharedAcrossApiKeysOfTheSameLogin() throws Exception {
+		String prodToken = AccessTokenCache.get(PROD_APP, 480L, () -> "prod-token");
+		String impostorToken = AccessTokenCache.get(IMPOSTOR, 480L, () -> "impostor-token");
+
+		assertNotEquals(CredentialsSupplier.listingKey(configuration, prodToken),
+				CredentialsSupplier.listingKey(configuration, impostorToken));
+		assertEquals(PROD_APP + "|null|null", CredentialsSupplier.listingKey(configuration, prodToken));
+	}
+
+	@Test
+	public void variableNamedLikeTheIdWinsOverDashesReadAsSlashes() throws Exception {
+		List<String> existing = new ArrayList<String>(Arrays.asList("my-app", "my/app"));
+		conjurAPI.when(() -> ConjurAPI.getVariable(any(), any(), anyString(), anyString())).thenAnswer(
+				invocation -> existing.contains(invocation.getArgument(3)) ? variable(invocation.getArgument(3), null, null)
+						: null);
+
+		ConjurSecretCredentialsImpl exact = (ConjurSecretCredentialsImpl) CredentialsSupplier.resolve("my-app", job);
+		assertEquals("my-app", exact.getVariablePath());
+		conjurAPI.verify(() -> ConjurAPI.getVariable(any(), any(), anyString(), eq("my/app")), never());
+
+		existing.remove("my-app");
+		ConjurSecretCredentialsImpl slashed = (ConjurSecretCredentialsImpl) CredentialsSupplier.resolve("my-app", job);
+		assertEquals("my/app", slashed.getVariablePath());
+	}
+
+	@Test
+	public void uncachedTokensAreOnlySharedWithTheSameToken() {
+		String key = CredentialsSupplier.listingKey(configuration, "uncached-token");
+
+		assertEquals(key, CredentialsSupplier.listingKey(configuration, "uncached-token"));
+		assertNotEquals(key, CredentialsSupplier.listingKey(configuration, "other-token"));
+		assertFalse(key.contains("uncached-token"));
+	}
+
+	@Test
+	public void refreshesReuseUnchangedCredentialsAndCountTheDifferences() {
+		variables.addAll(Arrays.asList(variable("db/password", null, null), variable("app/login", "app", null),
+				variable("deploy/key", "git", "usernamesshkeycredential")));
+		CredentialsSupplier supplier = (CredentialsSupplier) CredentialsSupplier.standard(job);
+
+		CredentialsSnapshot first = (CredentialsSnapshot) supplier.get();
+		assertDiff(first, 5, 0, 0);
+
+		CredentialsSnapshot second = (CredentialsSnapshot) supplier.get();
+		assertDiff(second, 0, 0, 0);
+		for (String id : Arrays.asList("db-password", "app-login", "username-app-login", "deploy-key",
+				"usernamesshkey-deploy-key")) {
+			assertSame(id, first.getById(id), second.getById(id));
+		}
+
+		variables.remove(0);
+		variables.get(0).userName = "renamed";
+		CredentialsSnapshot third = (CredentialsSnapshot) supplier.get();
+		assertDiff(third, 0, 1, 1);
+		assertNull(third.getById("db-password"));
+		assertNotSame(second.getById("username-app-login"), third.getById("username-app-login"));
+		assertSame(second.getById("usernamesshkey-deploy-key"), third.getById("usernamesshkey-deploy-key"));
+	}
+
+	@Test
+	public void configurationChangeReplacesUsernameAndSshKeyCredentials() {
+		variables.addAll(Arrays.asList(variable("db/password", null, null), variable("app/login", "app", null),
+				variable("deploy/key", "git", "usernamesshkeycredential")));
+		CredentialsSupplier supplier = (CredentialsSupplier) CredentialsSupplier.standard(job);
+		CredentialsSnapshot before = (CredentialsSnapshot) supplier.get();
+
+		ConjurConfiguration moved = new ConjurConfiguration("https://conjur", "other-account");
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any())).thenReturn(moved);
+		CredentialsSnapshot after = (CredentialsSnapshot) supplier.get();
+
+		assertDiff(after, 0, 2, 0);
+		assertSame(before.getById("db-password"), after.getById("db-password"));
+		assertSame(moved, ((ConjurSecretUsernameCredentialsImpl) after.getById("username-app-login"))
+				.getConjurConfiguration());
+		assertSame(moved, ((ConjurSecretUsernameSSHKeyCredentialsImpl) after.getById("usernamesshkey-deploy-key"))
+				.getConjurConfiguration());
+
+		// an equal configuration resolved again does not replace anything
+		conjurAPI.when(() -> ConjurAPI.getConfigurationFromContext(any(), any()))
+				.thenReturn(new ConjurConfiguration("https://conjur", "other-account"));
+		CredentialsSnapshot again = (CredentialsSnapshot) supplier.get();
+		assertDiff(again, 0, 0, 0);
+		assertSame(after.getById("username-app-login"), again.getById("username-app-login"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void refreshListsTheVariablesAgain() throws Exception {
+		variables.add(variable("db/password", null, null));
+		conjurAPI.when(() -> ConjurAPI.getAuthorizationToken(any(), any(), any())).thenReturn("refresh-token");
+		when(job.getFullName()).thenReturn("job");
+		ExtensionList<GlobalConfiguration> extensions = mock(ExtensionList.class);
+		try (MockedStatic<GlobalConfiguration> globalConfiguration = mockStatic(GlobalConfiguration.class)) {
+			globalConfiguration.when(GlobalConfiguration::all).thenReturn(extensions);
+			String key = ConjurCredentialStore.registryKey(job);
+			ConjurCredentialStore.getAllStores().put(key, mock(ConjurCredentialStore.class));
+
+			CredentialsSupplier.standard(job).get();
+			// a second store of the same identity shares the listing
+			CredentialsSupplier.standard(job).get();
+			conjurAPI.verify(() -> ConjurAPI.getVariablesAsync(any(), any(), anyString()), times(1));
+
+			assertEquals(FormValidation.Kind.OK,
+					new ConjurConfiguration.DescriptorImpl().doRefreshCredentialSupplier(job).kind);
+			ConjurCredentialProvider.getAllCredentialSuppliers().get(key).get();
+			conjurAPI.verify(() -> ConjurAPI.getVariablesAsync(any(), any(), anyString()), times(2));
+		} finally {
+			ConjurCredentialStore.getAllStores().clear();
+			ConjurCredentialProvider.getAllCredentialSuppliers().clear();
+			ConjurCredentialStore.invalidateRegistryKeys();
+		}
+	}
+
+	@Test
+	public void pagesAfterTheFirstAreRequestedConcurrently() throws Exception {
+		// the second and third page only answer once both are requested
+		CountDownLatch requested = new CountDownLatch(2);
+		List<Integer> overlapping = Collections.synchronizedList(new ArrayList<Integer>());
+		try (MockWebServer server = new MockWebServer()) {
+			server.setDispatcher(new Dispatcher() {
+				@Override
+				public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+					HttpUrl url = request.getRequestUrl();
+					int limit = Integer.parseInt(url.queryParameter("limit"));
+					int offset = Integer.parseInt(url.queryParameter("offset"));
+					if (offset == limit || offset == 2 * limit) {
+						requested.countDown();
+						if (requested.await(10, TimeUnit.SECONDS)) {
+							overlapping.add(offset);
+						}
+					}
+					return new MockResponse().setBody(page(offset, Math.max(0, Math.min(limit, 2500 - offset))));
+				}
+			});
+			ConjurConfiguration conjur = new ConjurConfiguration(server.url("/").toString(), "account");
+			conjurAPI.close();
+			// the listing goes through the real paging of ConjurAPI
+			conjurAPI = mockStatic(ConjurAPI.class, invocation -> {
+				switch (invocation.getMethod().getName()) {
+				case "getConfigurationFromContext":
+					return conjur;
+				case "getAuthorizationToken":
+					return "paging-token";
+				default:
+					return invocation.callRealMethod();
+				}
+			});
+
+			Collection<StandardCredentials> credentials = CredentialsSupplier.standard(job).get();
+
+			assertEquals(2500, credentials.size());
+			assertEquals("pages requested while the other was pending", 2, overlapping.size());
+		}
+	}
+
+	/**
+	 * @return a page of the resource listing holding count variables
+	 */
+	private static String page(int from, int count) {
+		StringBuilder listing = new StringBuilder("[");
+		for (int i = from; i < from + count; i++) {
+			listing.append(i > from ? "," : "").append("{\"id\":\"account:variable:app/").append(i).append("\"}");
+		}
+		return listing.append("]").toString();
+	}
+
+	private static void assertDiff(CredentialsSnapshot snapshot, int added, int changed, int removed) {
+		assertEquals("added", added, snapshot.getAdded());
+		assertEquals("changed", changed, snapshot.getChanged());
+		assertEquals("removed", removed, snapshot.getRemoved());
+	}
+
+	private static ConjurVariable variable(String path, String userName, String credentialType) {
+		ConjurVariable variable = new ConjurVariable();
+		variable.variablePath = path;
+		variable.userName = userName;
+		variable.credentialType = credentialType;
+		return variable;
+	}
+}
@@ -0,0 +1,182 @@
+package org.conjur.jenkins.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.conjur.jenkins.credentials.CustomSuppliers.RefreshAheadSupplier;
+import org.junit.Test;
+
+public class CustomSuppliersTest {
+
+	private static final Duration TTL = Duration.ofSeconds(100);
+
+	private static final Executor DIRECT = Runnable::run;
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	/** Fails the loads while set */
+	private volatile boolean failing;
+
+	private final Supplier<String> base = () -> {
+		int load = loads.incrementAndGet();
+		if (failing) {
+			throw new IllegalStateException("Retrieving credentials from Conjur failed: load " + load);
+		}
+		return "value-" + load;
+	};
+
+	@Test
+	public void refreshIsScheduledInTheSecondHalfOfTheDuration() {
+		Set<Long> refreshTimes = new HashSet<Long>();
+		for (int i = 0; i < 50; i++) {
+			RefreshAheadSupplier<String> supplier = supplier(DIRECT);
+			supplier.get();
+
+			long refreshAt = supplier.snapshot.refreshAtNanos;
+			assertTrue("refresh at " + refreshAt, refreshAt >= seconds(50) && refreshAt <= seconds(75));
+			assertEquals(seconds(100), supplier.snapshot.expirationNanos);
+			refreshTimes.add(refreshAt);
+		}
+		assertTrue("suppliers loaded together refresh at different times", refreshTimes.size() > 1);
+	}
+
+	@Test
+	public void refreshesAheadOfExpiry() {
+		RefreshAheadSupplier<String> supplier = supplier(DIRECT);
+		assertEquals("value-1", supplier.get());
+
+		now.set(seconds(40));
+		assertEquals("value-1", supplier.get());
+		assertEquals(1, loads.get());
+
+		now.set(seconds(80));
+		// served the current value, reloaded behind it
+		assertEquals("value-1", supplier.get());
+		assertEquals(2, loads.get());
+		assertEquals("value-2", supplier.get());
+		assertEquals(seconds(180), supplier.snapshot.expirationNanos);
+	}
+
+	@Test
+	public void keepsTheLastValueForALimitedTimeWhileReloadsFail() {
+		RefreshAheadSupplier<String> supplier = supplier(DIRECT);
+		assertEquals("value-1", supplier.get());
+		failing = true;
+
+		now.set(seconds(80));
+		assertEquals("value-1", supplier.get());
+		assertEquals("value-1", supplier.get());
+
+		now.set(seconds(280));
+		assertEquals("value-1", supplier.get());
+		assertEquals("kept no longer than three durations after the load", seconds(300),
+				supplier.snapshot.expirationNanos);
+
+		now.set(seconds(300));
+		IllegalStateException e = assertThrows(IllegalStateException.class, supplier::get);
+		assertTrue(e.getMessage(), e.getMessage().startsWith("Retrieving credentials from Conjur failed"));
+
+		failing = false;
+		now.set(seconds(400));
+		assertTrue(supplier.get().startsWith("value-"));
+	}
+
+	@Test
+	public void firstLoadFailureIsThrown() {
+		failing = true;
+		RefreshAheadSupplier<String> supplier = supplier(DIRECT);
+
+		assertThrows(IllegalStateException.class, supplier::get);
+		assertNull(CustomSuppliers.peek(supplier));
+	}
+
+	@Test
+	public void failedLoadsServeTheFallbackOnceNoValueIsLeft() {
+		RefreshAheadSupplier<String> supplier = new RefreshAheadSupplier<String>(base, () -> TTL, "fallback", DIRECT,
+				now::get);
+		assertEquals("value-1", supplier.get());
+		failing = true;
+
+		now.set(seconds(300));
+		assertEquals("fallback", supplier.get());
+		assertEquals("fallback", supplier.get());
+		assertEquals("one load per failure until the retry", 2, loads.get());
+		assertNull(CustomSuppliers.peek(supplier));
+
+		failing = false;
+		now.set(seconds(400));
+		assertEquals("value-3", supplier.get());
+	}
+
+	@Test
+	public void fullRefreshQueueDefersTheRefresh() {
+		AtomicInteger rejected = new AtomicInteger();
+		RefreshAheadSupplier<String> supplier = supplier(command -> {
+			rejected.incrementAndGet();
+			throw new RejectedExecutionException("queue full");
+		});
+		assertEquals("value-1", supplier.get());
+
+		now.set(seconds(80));
+		assertEquals("value-1", supplier.get());
+		assertEquals("value-1", supplier.get());
+		assertEquals("every access retries the refresh", 2, rejected.get());
+		assertEquals(1, loads.get());
+
+		now.set(seconds(100));
+		assertEquals("value-2", supplier.get());
+	}
+
+	@Test
+	public void backgroundRefreshIsSkippedWhenACallerLoadedMeanwhile() {
+		Runnable[] queued = new Runnable[1];
+		RefreshAheadSupplier<String> supplier = supplier(command -> queued[0] = command);
+		supplier.get();
+
+		now.set(seconds(80));
+		supplier.get();
+		now.set(seconds(100));
+		assertEquals("value-2", supplier.get());
+
+		queued[0].run();
+		assertEquals(2, loads.get());
+		assertEquals("value-2", supplier.get());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void memoizeWithExpirationLoadsOnTheCallingThread() {
+		Supplier<String> supplier = CustomSuppliers.memoizeWithExpiration(base, Duration.ofMinutes(10));
+		assertTrue(supplier instanceof CustomSuppliers.ExpiringMemoizingSupplier);
+		assertEquals("value-1", supplier.get());
+		assertEquals("value-1", supplier.get());
+		assertEquals(1, loads.get());
+
+		failing = true;
+		Supplier<String> failingSupplier = CustomSuppliers.memoizeWithExpiration(base, Duration.ofMinutes(10));
+		assertThrows(IllegalStateException.class, failingSupplier::get);
+		assertEquals(2, loads.get());
+	}
+
+	private RefreshAheadSupplier<String> supplier(Executor executor) {
+		return new RefreshAheadSupplier<String>(base, () -> TTL, executor, now::get);
+	}
+
+	private static long seconds(long seconds) {
+		return TimeUnit.SECONDS.toNanos(seconds);
+	}
+}